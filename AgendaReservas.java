@@ -0,0 +1,263 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agenda de reservas com linha do tempo de capacidade.
+ * O tempo é dividido em intervalos de 15 minutos dentro de um horizonte de 90 dias.
+ * Uma árvore de segmentos (com atualização preguiçosa) guarda quantas reservas
+ * pendentes ocupam cada intervalo, permitindo verificar e reservar qualquer
+ * período em O(log n). Quando o horizonte avança, a árvore é reconstruída
+ * a partir das reservas ainda válidas.
+ */
+public class AgendaReservas {
+    private static final long SEGUNDOS_POR_INTERVALO = 15 * 60;
+    private static final int INTERVALOS = 90 * 24 * 4; // 90 dias
+    private static final Duration TOLERANCIA_ANTECIPACAO = Duration.ofMinutes(15);
+
+    private final int capacidade;
+    private final Map<String, Reserva> reservas; // Reservas pendentes, por placa (em maiúsculas)
+    private long intervaloInicial;               // Primeiro intervalo coberto pela árvore
+    private int[] maximo;                        // Máximo de reservas no segmento
+    private int[] pendente;                      // Acréscimo ainda não propagado aos filhos
+
+    /**
+     * Cria a agenda vazia.
+     * @param capacidade Número máximo de reservas simultâneas
+     * @param agora Data e hora atual (início do horizonte)
+     */
+    public AgendaReservas(int capacidade, LocalDateTime agora) {
+        this.capacidade = capacidade;
+        this.reservas = new LinkedHashMap<>();
+        reconstruir(intervalo(agora));
+    }
+
+    /**
+     * Reserva uma vaga se houver capacidade em todo o período.
+     * @param reserva Reserva desejada
+     * @param agora Data e hora atual
+     * @return true se a reserva foi registrada, false se inválida, duplicada ou sem vaga
+     */
+    public boolean reservar(Reserva reserva, LocalDateTime agora) {
+        if (!reserva.getFim().isAfter(reserva.getInicio()) || !reserva.getFim().isAfter(agora)) {
+            return false; // Período inválido ou já encerrado
+        }
+        String chave = reserva.getPlaca().toUpperCase();
+        Reserva existente = reservas.get(chave);
+        if (existente != null) {
+            if (existente.getFim().isAfter(agora)) {
+                return false; // Placa já possui reserva
+            }
+            reservas.remove(chave); // Reserva anterior expirou sem uso
+        }
+
+        long ultimo = intervaloFinal(reserva.getFim());
+        if (ultimo >= intervaloInicial + INTERVALOS) {
+            // Avança o horizonte para o momento atual antes de desistir
+            reconstruir(intervalo(agora));
+            if (ultimo >= intervaloInicial + INTERVALOS) {
+                return false; // Fora do horizonte de reservas
+            }
+        }
+
+        // A capacidade só é verificada do momento atual em diante
+        long primeiroVerificado = Math.max(Math.max(intervalo(reserva.getInicio()), intervalo(agora)), intervaloInicial);
+        long primeiro = Math.max(intervalo(reserva.getInicio()), intervaloInicial);
+        int ate = (int) (ultimo - intervaloInicial);
+        if (consultarMaximo(1, 0, INTERVALOS - 1, (int) (primeiroVerificado - intervaloInicial), ate) >= capacidade) {
+            return false; // Algum intervalo do período já está lotado
+        }
+        adicionar(1, 0, INTERVALOS - 1, (int) (primeiro - intervaloInicial), ate, 1);
+        reservas.put(chave, reserva);
+        return true;
+    }
+
+    /**
+     * Cancela a reserva pendente de uma placa.
+     * @param placa Placa do veículo
+     * @return true se a reserva foi cancelada, false se não existia
+     */
+    public boolean cancelar(String placa) {
+        Reserva reserva = reservas.remove(placa.toUpperCase());
+        if (reserva == null) {
+            return false;
+        }
+        liberar(reserva, reserva.getInicio());
+        return true;
+    }
+
+    /**
+     * Busca a reserva pendente de uma placa válida no momento informado.
+     * Aceita chegadas até 15 minutos antes do início.
+     * @param placa Placa do veículo
+     * @param momento Data e hora de chegada
+     * @return Reserva válida ou null
+     */
+    public Reserva buscarReservaAtiva(String placa, LocalDateTime momento) {
+        Reserva reserva = reservas.get(placa.toUpperCase());
+        if (reserva == null) {
+            return null;
+        }
+        if (momento.isBefore(reserva.getInicio().minus(TOLERANCIA_ANTECIPACAO)) || !momento.isBefore(reserva.getFim())) {
+            return null;
+        }
+        return reserva;
+    }
+
+    /**
+     * Retorna a reserva pendente de uma placa, em qualquer período.
+     * @param placa Placa do veículo
+     * @return Reserva pendente ou null
+     */
+    public Reserva buscarReserva(String placa) {
+        return reservas.get(placa.toUpperCase());
+    }
+
+    /**
+     * Verifica se a reserva pendente da placa ocupa vaga no momento informado,
+     * isto é, se o momento está dentro do período reservado.
+     * @param placa Placa do veículo
+     * @param momento Data e hora consultada
+     * @return true se a reserva da placa está em vigor
+     */
+    public boolean isReservaEmVigor(String placa, LocalDateTime momento) {
+        Reserva reserva = reservas.get(placa.toUpperCase());
+        if (reserva == null) {
+            return false;
+        }
+        long i = intervalo(momento);
+        return i >= intervalo(reserva.getInicio()) && i <= intervaloFinal(reserva.getFim());
+    }
+
+    /**
+     * Marca a reserva como utilizada: o veículo chegou e passa a ocupar uma vaga.
+     * O restante do período (ou o período inteiro, se a chegada foi antes do início)
+     * deixa de contar como reserva pendente.
+     * @param reserva Reserva utilizada
+     * @param momento Data e hora de chegada
+     */
+    public void utilizar(Reserva reserva, LocalDateTime momento) {
+        if (reservas.remove(reserva.getPlaca().toUpperCase()) != null) {
+            liberar(reserva, momento);
+        }
+    }
+
+    /**
+     * Retorna quantas reservas pendentes ocupam vaga no momento informado.
+     * @param momento Data e hora consultada
+     * @return Número de vagas reservadas
+     */
+    public int getReservasPendentes(LocalDateTime momento) {
+        long i = intervalo(momento);
+        if (i < intervaloInicial || i >= intervaloInicial + INTERVALOS) {
+            return 0;
+        }
+        int posicao = (int) (i - intervaloInicial);
+        return consultarMaximo(1, 0, INTERVALOS - 1, posicao, posicao);
+    }
+
+    /**
+     * Retorna as reservas pendentes que ainda não terminaram.
+     * @param agora Data e hora atual
+     * @return Lista de reservas, na ordem em que foram feitas
+     */
+    public List<Reserva> getReservas(LocalDateTime agora) {
+        Iterator<Reserva> it = reservas.values().iterator();
+        while (it.hasNext()) {
+            if (!it.next().getFim().isAfter(agora)) {
+                it.remove(); // Reserva expirada sem uso
+            }
+        }
+        return new ArrayList<>(reservas.values());
+    }
+
+    /**
+     * Retorna as reservas pendentes sem copiá-las nem descartar as expiradas.
+     * @return Visão somente leitura das reservas
+     */
+    public Collection<Reserva> getReservasRegistradas() {
+        return Collections.unmodifiableCollection(reservas.values());
+    }
+
+    // Remove a reserva da linha do tempo a partir do momento informado
+    private void liberar(Reserva reserva, LocalDateTime aPartirDe) {
+        long primeiro = Math.max(Math.max(intervalo(reserva.getInicio()), intervalo(aPartirDe)), intervaloInicial);
+        long ultimo = Math.min(intervaloFinal(reserva.getFim()), intervaloInicial + INTERVALOS - 1);
+        if (primeiro <= ultimo) {
+            adicionar(1, 0, INTERVALOS - 1, (int) (primeiro - intervaloInicial), (int) (ultimo - intervaloInicial), -1);
+        }
+    }
+
+    // Recria a árvore a partir de um novo início, descartando reservas expiradas
+    private void reconstruir(long novoInicio) {
+        intervaloInicial = novoInicio;
+        maximo = new int[4 * INTERVALOS];
+        pendente = new int[4 * INTERVALOS];
+        Iterator<Reserva> it = reservas.values().iterator();
+        while (it.hasNext()) {
+            Reserva r = it.next();
+            long ultimo = intervaloFinal(r.getFim());
+            if (ultimo < intervaloInicial) {
+                it.remove();
+                continue;
+            }
+            long primeiro = Math.max(intervalo(r.getInicio()), intervaloInicial);
+            adicionar(1, 0, INTERVALOS - 1, (int) (primeiro - intervaloInicial), (int) (ultimo - intervaloInicial), 1);
+        }
+    }
+
+    private void adicionar(int no, int esq, int dir, int de, int ate, int valor) {
+        if (ate < esq || dir < de) {
+            return;
+        }
+        if (de <= esq && dir <= ate) {
+            maximo[no] += valor;
+            pendente[no] += valor;
+            return;
+        }
+        propagar(no);
+        int meio = (esq + dir) / 2;
+        adicionar(2 * no, esq, meio, de, ate, valor);
+        adicionar(2 * no + 1, meio + 1, dir, de, ate, valor);
+        maximo[no] = Math.max(maximo[2 * no], maximo[2 * no + 1]);
+    }
+
+    private int consultarMaximo(int no, int esq, int dir, int de, int ate) {
+        if (ate < esq || dir < de) {
+            return 0;
+        }
+        if (de <= esq && dir <= ate) {
+            return maximo[no];
+        }
+        propagar(no);
+        int meio = (esq + dir) / 2;
+        return Math.max(consultarMaximo(2 * no, esq, meio, de, ate),
+                        consultarMaximo(2 * no + 1, meio + 1, dir, de, ate));
+    }
+
+    private void propagar(int no) {
+        if (pendente[no] != 0) {
+            for (int filho = 2 * no; filho <= 2 * no + 1; filho++) {
+                maximo[filho] += pendente[no];
+                pendente[filho] += pendente[no];
+            }
+            pendente[no] = 0;
+        }
+    }
+
+    private static long intervalo(LocalDateTime momento) {
+        return Math.floorDiv(momento.toEpochSecond(ZoneOffset.UTC), SEGUNDOS_POR_INTERVALO);
+    }
+
+    // Último intervalo tocado por um período que termina em fim (exclusivo)
+    private static long intervaloFinal(LocalDateTime fim) {
+        return Math.floorDiv(fim.toEpochSecond(ZoneOffset.UTC) - 1, SEGUNDOS_POR_INTERVALO);
+    }
+}
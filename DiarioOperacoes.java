@@ -0,0 +1,323 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diário das operações do nó que altera o estacionamento (primário ou sem replicação).
+ * Cada operação é gravada e forçada ao disco antes de ser dada como concluída; junto com
+ * a imagem de estado em que o diário começa, reconstrói exatamente o estado após a
+ * última operação. Um seguidor promovido depois da queda do primário usa o diário dele
+ * para aplicar as operações que ainda não tinha recebido; o próprio nó, ao reiniciar depois
+ * de uma queda, as reaplica sobre a imagem (reaplicar).
+ * Ao salvar uma nova imagem (salvarImagem), o diário recomeça a partir dela; para limitar o
+ * diário e o tempo de recuperação, isso é feito a cada 10.000 operações (salvarImagemSeNecessario).
+ *
+ * Formato (texto UTF-8, um registro por linha):
+ *   IMAGEM identificador               imagem de estado em que o diário começa (primeira linha)
+ *   HISTORICO historico sequencia      início de um histórico de replicação; a imagem já inclui
+ *                                      as operações dele até a sequência informada
+ *   operações no formato de OperacaoReplicada.paraLinha()
+ */
+public class DiarioOperacoes {
+    private static final int LIMITE_OPERACOES = 10_000; // Operações gravadas antes de uma nova imagem
+
+    private final Path arquivo;
+    private final Path imagem;
+    private FileChannel canal;
+    private String historico;     // Histórico de replicação em andamento (null se não houver)
+    private long ultimaSequencia; // Última operação do histórico gravada
+    private long operacoes;       // Operações gravadas desde a última imagem (ou tentativa de gravá-la)
+    private volatile IOException ultimoErro;
+
+    /**
+     * Cria o diário. Nada é gravado até iniciar() ou salvarImagem().
+     * @param arquivo Caminho do diário
+     * @param imagem Caminho da imagem de estado em que o diário começa
+     */
+    public DiarioOperacoes(Path arquivo, Path imagem) {
+        this.arquivo = arquivo.toAbsolutePath();
+        this.imagem = imagem.toAbsolutePath();
+    }
+
+    /**
+     * Recomeça o diário a partir da imagem informada, descartando as operações anteriores.
+     * O histórico de replicação em andamento continua, a partir da última operação gravada.
+     * @param identificadorImagem Identificador da imagem (0 para o estado vazio, sem imagem)
+     * @throws IOException se o diário não puder ser gravado (fica também em getUltimoErro(),
+     *         pois as operações seguintes não serão gravadas)
+     */
+    public synchronized void iniciar(long identificadorImagem) throws IOException {
+        fecharCanal();
+        try {
+            recomecar(identificadorImagem);
+        } catch (IOException e) {
+            ultimoErro = e;
+            throw e;
+        }
+    }
+
+    // Grava o novo diário ao lado do atual e o substitui de uma vez
+    private void recomecar(long identificadorImagem) throws IOException {
+        StringBuilder cabecalho = new StringBuilder("IMAGEM ").append(identificadorImagem).append('\n');
+        if (historico != null) {
+            cabecalho.append("HISTORICO ").append(historico).append(' ').append(ultimaSequencia).append('\n');
+        }
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (FileChannel novo = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            gravar(novo, cabecalho.toString());
+            novo.force(true);
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        canal = FileChannel.open(arquivo, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        operacoes = 0;
+    }
+
+    /**
+     * Grava o estado completo em uma nova imagem e recomeça o diário a partir dela.
+     * Deve ser chamado pela thread que altera o estacionamento, entre duas operações.
+     * @param estacionamento Estacionamento a ser gravado
+     * @throws IOException se a imagem ou o diário não puderem ser gravados
+     */
+    public synchronized void salvarImagem(Estacionamento estacionamento) throws IOException {
+        iniciar(ImagemEstado.salvar(estacionamento, imagem));
+    }
+
+    /**
+     * Grava uma nova imagem e recomeça o diário se as operações desde a última imagem passaram
+     * do limite. Deve ser chamado pela thread que altera o estacionamento, ao final de uma operação.
+     * Se a imagem não puder ser gravada, o diário continua crescendo e uma nova tentativa é
+     * feita depois de outras 10.000 operações.
+     * @param estacionamento Estacionamento a ser gravado
+     */
+    public synchronized void salvarImagemSeNecessario(Estacionamento estacionamento) {
+        if (operacoes < LIMITE_OPERACOES) {
+            return;
+        }
+        try {
+            salvarImagem(estacionamento);
+        } catch (IOException e) {
+            operacoes = 0;
+        }
+    }
+
+    /**
+     * Registra o início de um histórico de replicação.
+     * @param historico Identificador do histórico
+     * @param sequencia Última operação do histórico já incluída no estado atual
+     */
+    public synchronized void iniciarHistorico(String historico, long sequencia) {
+        this.historico = historico;
+        this.ultimaSequencia = sequencia;
+        acrescentar("HISTORICO " + historico + " " + sequencia);
+    }
+
+    /**
+     * Grava a operação e só retorna depois que ela estiver no disco.
+     * Uma falha de gravação fica disponível em getUltimoErro().
+     * @param operacao Operação já aplicada ao estacionamento (e numerada, se houver replicação)
+     */
+    public synchronized void registrar(OperacaoReplicada operacao) {
+        if (acrescentar(operacao.paraLinha())) {
+            operacoes++;
+            if (operacao.getSequencia() > 0) {
+                ultimaSequencia = operacao.getSequencia();
+            }
+        }
+    }
+
+    /**
+     * Retorna quantas operações foram gravadas desde a última imagem.
+     * @return Número de operações
+     */
+    public synchronized long getOperacoes() {
+        return operacoes;
+    }
+
+    /**
+     * Retorna o último erro de gravação.
+     * @return Último erro ou null se nenhum ocorreu
+     */
+    public IOException getUltimoErro() {
+        return ultimoErro;
+    }
+
+    public Path getArquivo() {
+        return arquivo;
+    }
+
+    public Path getImagem() {
+        return imagem;
+    }
+
+    /**
+     * Fecha o diário. As operações já registradas estão no disco.
+     */
+    public synchronized void fechar() {
+        fecharCanal();
+    }
+
+    /**
+     * Reaplica a um estacionamento recém-restaurado as operações que o diário gravou depois da
+     * imagem de onde ele veio (as de uma execução que não terminou pela opção 0).
+     * Deve ser chamado antes de associar diário, replicação e auditoria ao estacionamento.
+     * @param arquivo Caminho do diário
+     * @param identificadorImagem Imagem restaurada (0 se o estado começou vazio)
+     * @param estacionamento Estacionamento restaurado dessa imagem
+     * @return Quantidade de operações reaplicadas (0 se o diário não existe ou está vazio)
+     * @throws IOException se o diário não puder ser lido ou não começar nessa imagem
+     */
+    public static long reaplicar(Path arquivo, long identificadorImagem, Estacionamento estacionamento)
+            throws IOException {
+        if (!Files.exists(arquivo)) {
+            return 0;
+        }
+        Conteudo conteudo = ler(arquivo);
+        if (conteudo.getOperacoes().isEmpty()) {
+            return 0;
+        }
+        if (conteudo.getIdentificadorImagem() != identificadorImagem) {
+            throw new IOException("o diário " + arquivo + " não começa na imagem restaurada");
+        }
+        for (OperacaoReplicada operacao : conteudo.getOperacoes()) {
+            operacao.aplicarEm(estacionamento);
+        }
+        return conteudo.getOperacoes().size();
+    }
+
+    /**
+     * Lê um diário gravado. Uma última linha incompleta (queda durante a gravação) é ignorada.
+     * @param arquivo Caminho do diário
+     * @return Conteúdo do diário
+     * @throws IOException se o arquivo não puder ser lido ou não for um diário
+     */
+    public static Conteudo ler(Path arquivo) throws IOException {
+        try (BufferedReader leitor = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            String linha = leitor.readLine();
+            if (linha == null || !linha.startsWith("IMAGEM ")) {
+                throw new IOException("Arquivo não é um diário de operações: " + arquivo);
+            }
+            Conteudo conteudo;
+            try {
+                conteudo = new Conteudo(Long.parseLong(linha.substring("IMAGEM ".length())));
+            } catch (NumberFormatException e) {
+                throw new IOException("Diário de operações corrompido: " + arquivo, e);
+            }
+            String historico = null;
+            while ((linha = leitor.readLine()) != null) {
+                try {
+                    if (linha.startsWith("HISTORICO ")) {
+                        String[] campos = linha.split(" ");
+                        historico = campos[1];
+                        conteudo.bases.put(historico, Long.parseLong(campos[2]));
+                        conteudo.porHistorico.put(historico, new ArrayList<>());
+                    } else {
+                        OperacaoReplicada operacao = OperacaoReplicada.deLinha(linha);
+                        conteudo.operacoes.add(operacao);
+                        if (historico != null) {
+                            conteudo.porHistorico.get(historico).add(operacao);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    break; // Linha incompleta: o que vem depois não foi confirmado
+                }
+            }
+            return conteudo;
+        }
+    }
+
+    // Acrescenta uma linha e força a gravação; retorna false se falhou
+    private boolean acrescentar(String linha) {
+        if (canal == null) {
+            return false;
+        }
+        try {
+            gravar(canal, linha + "\n");
+            canal.force(false);
+            return true;
+        } catch (IOException e) {
+            ultimoErro = e;
+            return false;
+        }
+    }
+
+    private static void gravar(FileChannel destino, String texto) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(texto.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            destino.write(bytes);
+        }
+    }
+
+    private void fecharCanal() {
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Já fechado
+            }
+            canal = null;
+        }
+    }
+
+    /**
+     * Conteúdo lido de um diário.
+     */
+    public static class Conteudo {
+        private final long identificadorImagem;
+        private final List<OperacaoReplicada> operacoes;
+        private final Map<String, Long> bases;
+        private final Map<String, List<OperacaoReplicada>> porHistorico;
+
+        private Conteudo(long identificadorImagem) {
+            this.identificadorImagem = identificadorImagem;
+            this.operacoes = new ArrayList<>();
+            this.bases = new HashMap<>();
+            this.porHistorico = new HashMap<>();
+        }
+
+        /**
+         * Retorna o identificador da imagem em que o diário começa.
+         * @return Identificador (0 para o estado vazio)
+         */
+        public long getIdentificadorImagem() {
+            return identificadorImagem;
+        }
+
+        /**
+         * Retorna todas as operações, na ordem em que foram gravadas.
+         * @return Operações do diário
+         */
+        public List<OperacaoReplicada> getOperacoes() {
+            return Collections.unmodifiableList(operacoes);
+        }
+
+        /**
+         * Retorna a última operação de um histórico já incluída na imagem.
+         * @param historico Identificador do histórico
+         * @return Sequência, ou -1 se o histórico não aparece no diário
+         */
+        public long getBase(String historico) {
+            return bases.getOrDefault(historico, -1L);
+        }
+
+        /**
+         * Retorna as operações de um histórico, em ordem.
+         * @param historico Identificador do histórico
+         * @return Operações (vazia se o histórico não aparece no diário)
+         */
+        public List<OperacaoReplicada> getOperacoes(String historico) {
+            return Collections.unmodifiableList(porHistorico.getOrDefault(historico, Collections.emptyList()));
+        }
+    }
+}
@@ -1,7 +1,15 @@
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.LinkedList;
-import java.util.Queue;
+import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.LocalDate;
 
@@ -10,20 +18,87 @@ import java.time.LocalDate;
  * Controla a lista de veículos, vagas disponíveis, total arrecadado e fila de espera.
  */
 public class Estacionamento {
-    private List<Veiculo> veiculos;
+    private List<Veiculo> veiculos; // Veículos atendidos nesta execução
+    private List<Veiculo> historicoCarregado; // Saídas de execuções anteriores (carregadas sob demanda)
+    private Map<String, Veiculo> estacionados; // Veículos presentes, por placa (em maiúsculas)
     private int capacidadeTotal;
     private double totalArrecadado; // Total arrecadado com todas as saídas
-    private Queue<Veiculo> filaEspera; // Fila de veículos aguardando vaga
+    private Map<LocalDate, Double> arrecadadoPorDia; // Total arrecadado por data de saída
+    private Deque<Veiculo> filaEspera; // Fila de veículos aguardando vaga
+    private SaidaAssincrona saida; // Saída usada pelos relatórios
+    private LogAuditoria auditoria; // Log de auditoria das transações (opcional)
+    private TarifaDinamica tarifaDinamica; // Tarifa por ocupação (null = tarifa fixa)
+    private EstimadorEspera estimadorEspera; // Previsão de espera da fila
+    private AgendaReservas agendaReservas; // Reservas de vagas para períodos futuros
+    private Set<String> estacionadosComReserva; // Placas presentes que têm reserva pendente (pode conter reservas já encerradas)
+    private ReplicacaoPrimaria replicacao; // Envio das operações aos nós seguidores (opcional)
+    private DiarioOperacoes diario; // Gravação durável de cada operação (opcional)
+    private Clock relogio; // Relógio das operações (parado no momento do primário ao aplicar operações replicadas)
     
     /**
      * Construtor do estacionamento.
      * @param capacidadeTotal Número total de vagas disponíveis
      */
     public Estacionamento(int capacidadeTotal) {
-        this.veiculos = new ArrayList<>();
-        this.capacidadeTotal = capacidadeTotal;
-        this.totalArrecadado = 0.0;
-        this.filaEspera = new LinkedList<>();
+        this.saida = SaidaAssincrona.console();
+        this.auditoria = null;
+        this.replicacao = null;
+        this.diario = null;
+        this.relogio = Clock.systemDefaultZone();
+        reiniciar(capacidadeTotal);
+    }
+    
+    /**
+     * Verifica se a placa pode ser registrada: não vazia, com até 23 bytes em UTF-8
+     * (tamanho do campo de placa na imagem de estado) e sem ';' nem caracteres de controle,
+     * que separam campos e linhas na auditoria.
+     * @param placa Placa do veículo
+     * @return true se a placa é válida
+     */
+    public static boolean isPlacaValida(String placa) {
+        if (placa == null || placa.isEmpty()
+                || placa.getBytes(StandardCharsets.UTF_8).length > ImagemEstado.TAMANHO_PLACA) {
+            return false;
+        }
+        for (int i = 0; i < placa.length(); i++) {
+            char c = placa.charAt(i);
+            if (c == ';' || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Define a replicação primária que receberá cada operação registrada.
+     * @param replicacao Replicação primária ou null para desativar
+     */
+    public void setReplicacao(ReplicacaoPrimaria replicacao) {
+        this.replicacao = replicacao;
+    }
+    
+    /**
+     * Define o diário em que cada operação é gravada antes de ser concluída.
+     * @param diario Diário de operações ou null para desativar
+     */
+    public void setDiario(DiarioOperacoes diario) {
+        this.diario = diario;
+    }
+    
+    /**
+     * Define a saída usada pelos relatórios.
+     * @param saida Saída assíncrona de destino
+     */
+    public void setSaida(SaidaAssincrona saida) {
+        this.saida = saida;
+    }
+    
+    /**
+     * Define o log de auditoria onde cada transação será registrada.
+     * @param auditoria Log de auditoria ou null para desativar
+     */
+    public void setLogAuditoria(LogAuditoria auditoria) {
+        this.auditoria = auditoria;
     }
     
     /**
@@ -33,19 +108,27 @@ public class Estacionamento {
      * @return true se a entrada foi registrada com sucesso, false caso contrário
      */
     public boolean registrarEntrada(String placa, String tipo) {
-        return registrarEntrada(placa, tipo, LocalDateTime.now());
+        return registrarEntrada(placa, tipo, LocalDateTime.now(relogio));
     }
     
     /**
      * Registra entrada de veículo com hora de entrada específica.
      * Se o estacionamento estiver cheio, adiciona à fila de espera.
+     * Veículos com reserva válida usam a vaga reservada; se não houver vaga física,
+     * entram no início da fila de espera. Um veículo que chega antes da tolerância da
+     * reserva entra como avulso e a reserva continua pendente; enquanto ele estiver
+     * estacionado durante o período reservado, ocupa uma única vaga.
      * @param placa Placa do veículo
      * @param tipo Tipo do veículo
      * @param dataEntrada Data e hora de entrada do veículo
-     * @return true se a entrada foi registrada com sucesso, false se já está estacionado, 
-     *         ou adiciona à fila se estiver cheio (retorna true mas veículo fica na fila)
+     * @return true se a entrada foi registrada com sucesso, false se já está estacionado
+     *         ou a placa é inválida, ou adiciona à fila se estiver cheio (retorna true mas veículo fica na fila)
      */
     public boolean registrarEntrada(String placa, String tipo, LocalDateTime dataEntrada) {
+        if (!isPlacaValida(placa)) {
+            return false;
+        }
+        
         // Verifica se já existe um veículo com a mesma placa estacionado
         if (buscarVeiculoEstacionado(placa) != null) {
             return false; // Veículo já está estacionado
@@ -58,17 +141,29 @@ public class Estacionamento {
             }
         }
         
+        LocalDateTime agora = LocalDateTime.now(relogio);
         Veiculo veiculo = new Veiculo(placa, tipo, dataEntrada);
+        boolean comReserva = agendaReservas.buscarReservaAtiva(placa, dataEntrada) != null;
         
         // Verifica se há vagas disponíveis
-        if (getVagasOcupadas() >= capacidadeTotal) {
-            // Estacionamento lotado - adiciona à fila de espera
-            filaEspera.offer(veiculo);
+        if (!temVagaPara(veiculo, dataEntrada)) {
+            // Estacionamento lotado - adiciona à fila de espera (com reserva, no início da fila)
+            if (comReserva) {
+                filaEspera.offerFirst(veiculo);
+            } else {
+                filaEspera.offer(veiculo);
+            }
+            estimadorEspera.invalidar();
+            auditar("FILA", veiculo, dataEntrada, 0.0);
+            publicar(OperacaoReplicada.entrada(placa, tipo, dataEntrada), agora);
             return true; // Retorna true mas veículo fica na fila
         }
         
         // Há vaga disponível - estaciona diretamente
-        veiculos.add(veiculo);
+        boolean reservaUtilizada = admitir(veiculo, dataEntrada);
+        registrarOcupacao(agora);
+        auditar(reservaUtilizada ? "ENTRADA_RESERVA" : "ENTRADA", veiculo, dataEntrada, 0.0);
+        publicar(OperacaoReplicada.entrada(placa, tipo, dataEntrada), agora);
         return true;
     }
     
@@ -84,53 +179,321 @@ public class Estacionamento {
             return -1; // Veículo não encontrado
         }
         
-        veiculo.setDataSaida(LocalDateTime.now());
-        double valor = veiculo.calcularValor();
+        veiculo.setDataSaida(LocalDateTime.now(relogio));
+        double valor = calcularValor(veiculo);
+        concluirSaida(veiculo, veiculo.getDataSaida(), valor);
+        return valor;
+    }
+    
+    /**
+     * Aplica uma saída já cobrada em outro nó (usado pela replicação).
+     * O valor não é recalculado, para que o total arrecadado seja idêntico ao do nó primário.
+     * @param placa Placa do veículo
+     * @param dataSaida Data e hora da saída registrada no primário
+     * @param valor Valor cobrado no primário
+     * @return Valor cobrado, ou -1 se o veículo não foi encontrado
+     */
+    public double aplicarSaida(String placa, LocalDateTime dataSaida, double valor) {
+        Veiculo veiculo = buscarVeiculoEstacionado(placa);
+        if (veiculo == null) {
+            return -1; // Veículo não encontrado
+        }
+        concluirSaida(veiculo, dataSaida, valor);
+        return valor;
+    }
+    
+    // Libera a vaga, contabiliza o valor e admite veículos da fila
+    private void concluirSaida(Veiculo veiculo, LocalDateTime dataSaida, double valor) {
+        LocalDateTime agora = LocalDateTime.now(relogio);
+        veiculo.setDataSaida(dataSaida);
+        veiculo.setValorCobrado(valor);
+        estacionados.remove(veiculo.getPlaca().toUpperCase());
+        estacionadosComReserva.remove(veiculo.getPlaca().toUpperCase());
+        estimadorEspera.registrarPermanencia(veiculo);
         totalArrecadado += valor; // Adiciona ao total arrecadado
+        arrecadadoPorDia.merge(dataSaida.toLocalDate(), valor, Double::sum);
+        auditar("SAIDA", veiculo, dataSaida, valor);
         
         // Verifica se há veículos na fila de espera e se há vaga disponível
-        if (!filaEspera.isEmpty()) {
+        while (!filaEspera.isEmpty() && temVagaPara(filaEspera.peek(), dataSaida)) {
             Veiculo proximoVeiculo = filaEspera.poll(); // Remove o primeiro da fila
-            veiculos.add(proximoVeiculo); // Estaciona o veículo da fila
+            admitir(proximoVeiculo, dataSaida); // Estaciona o veículo da fila
+            auditar("ENTRADA_FILA", proximoVeiculo, dataSaida, 0.0);
         }
         
-        return valor;
+        registrarOcupacao(agora);
+        publicar(OperacaoReplicada.saida(veiculo.getPlaca(), veiculo.getTipo(), dataSaida, valor), agora);
     }
     
-    // Busca veículo estacionado pela placa
-    public Veiculo buscarVeiculoEstacionado(String placa) {
-        for (Veiculo v : veiculos) {
-            if (v.getPlaca().equalsIgnoreCase(placa) && v.getDataSaida() == null) {
-                return v;
+    /**
+     * Ativa a tarifa dinâmica, que ajusta o valor cobrado conforme a ocupação.
+     * A ocupação atual passa a ser registrada a partir deste momento.
+     */
+    public void ativarTarifaDinamica() {
+        if (tarifaDinamica == null) {
+            LocalDateTime agora = LocalDateTime.now(relogio);
+            tarifaDinamica = new TarifaDinamica();
+            registrarOcupacao(agora);
+            publicar(OperacaoReplicada.tarifa(true), agora);
+        }
+    }
+    
+    /**
+     * Desativa a tarifa dinâmica, voltando à tarifa fixa.
+     */
+    public void desativarTarifaDinamica() {
+        if (tarifaDinamica != null) {
+            tarifaDinamica = null;
+            publicar(OperacaoReplicada.tarifa(false), LocalDateTime.now(relogio));
+        }
+    }
+    
+    /**
+     * Retorna se a tarifa dinâmica está ativa.
+     * @return true se a tarifa dinâmica está ativa
+     */
+    public boolean isTarifaDinamicaAtiva() {
+        return tarifaDinamica != null;
+    }
+    
+    /**
+     * Retorna o multiplicador da tarifa em vigor agora (1,0 com a tarifa fixa).
+     * @return Multiplicador atual
+     */
+    public double getMultiplicadorTarifa() {
+        return (tarifaDinamica != null) ? tarifaDinamica.getMultiplicador(LocalDateTime.now(relogio)) : 1.0;
+    }
+    
+    /**
+     * Calcula o valor a pagar de um veículo conforme a tarifa em vigor.
+     * @param veiculo Veículo a ser cobrado
+     * @return Valor a pagar
+     */
+    public double calcularValor(Veiculo veiculo) {
+        return (tarifaDinamica != null) ? tarifaDinamica.calcularValor(veiculo) : veiculo.calcularValor();
+    }
+    
+    /**
+     * Estima quantos minutos faltam para o veículo em uma posição da fila conseguir vaga.
+     * @param posicao Posição na fila (começando em 1)
+     * @return Minutos estimados, ou -1 se não houver previsão
+     */
+    public long estimarEsperaMinutos(int posicao) {
+        return estimadorEspera.estimarEsperaMinutos(posicao, estacionados.values(), filaEspera,
+                agendaReservas.getReservasRegistradas(), capacidadeTotal, LocalDateTime.now(relogio));
+    }
+    
+    /**
+     * Prevê quando as próximas vagas serão liberadas.
+     * @param quantidade Número de vagas a prever
+     * @return Datas e horas previstas, em ordem crescente
+     */
+    public List<LocalDateTime> preverLiberacoes(int quantidade) {
+        LocalDateTime agora = LocalDateTime.now(relogio);
+        long[] minutos = estimadorEspera.preverLiberacoes(estacionados.values(), filaEspera,
+                agendaReservas.getReservasRegistradas(), capacidadeTotal, agora);
+        List<LocalDateTime> previsao = new ArrayList<>();
+        for (int i = 0; i < minutos.length && i < quantidade; i++) {
+            previsao.add(agora.plusMinutes(minutos[i]));
+        }
+        return previsao;
+    }
+    
+    // Informa a ocupação atual à tarifa dinâmica, se ativa
+    private void registrarOcupacao(LocalDateTime agora) {
+        if (tarifaDinamica != null) {
+            tarifaDinamica.registrarOcupacao(agora, estacionados.size(), capacidadeTotal);
+        }
+    }
+    
+    /**
+     * Reserva uma vaga para um período.
+     * A reserva é recusada se, em algum momento do período, todas as vagas já estiverem reservadas.
+     * Se o período já começou, também é preciso haver vaga livre agora.
+     * @param placa Placa do veículo
+     * @param tipo Tipo do veículo
+     * @param inicio Início do período
+     * @param fim Fim do período
+     * @return true se a reserva foi registrada, false caso contrário
+     */
+    public boolean reservar(String placa, String tipo, LocalDateTime inicio, LocalDateTime fim) {
+        return reservar(placa, tipo, inicio, fim, LocalDateTime.now(relogio));
+    }
+    
+    /**
+     * Reserva uma vaga para um período, considerando o momento informado como atual.
+     * @param placa Placa do veículo
+     * @param tipo Tipo do veículo
+     * @param inicio Início do período
+     * @param fim Fim do período
+     * @param agora Momento em que a reserva é feita
+     * @return true se a reserva foi registrada, false caso contrário
+     */
+    public boolean reservar(String placa, String tipo, LocalDateTime inicio, LocalDateTime fim, LocalDateTime agora) {
+        if (!isPlacaValida(placa)) {
+            return false;
+        }
+        if (!inicio.isAfter(agora)
+                && estacionados.size() + getVagasReservadas(agora) >= capacidadeTotal) {
+            return false; // Período já começou e não há vaga livre
+        }
+        Reserva reserva = new Reserva(placa, tipo, inicio, fim);
+        if (!agendaReservas.reservar(reserva, agora)) {
+            return false;
+        }
+        if (estacionados.containsKey(placa.toUpperCase())) {
+            estacionadosComReserva.add(placa.toUpperCase());
+        }
+        estimadorEspera.invalidar();
+        auditar("RESERVA", placa, tipo, inicio, 0.0);
+        publicar(OperacaoReplicada.reserva(placa, tipo, inicio, fim, agora), agora);
+        return true;
+    }
+    
+    /**
+     * Cancela a reserva pendente de uma placa.
+     * @param placa Placa do veículo
+     * @return true se a reserva foi cancelada, false se não existia
+     */
+    public boolean cancelarReserva(String placa) {
+        Reserva reserva = agendaReservas.buscarReserva(placa);
+        if (reserva == null || !agendaReservas.cancelar(placa)) {
+            return false;
+        }
+        estimadorEspera.invalidar();
+        LocalDateTime agora = LocalDateTime.now(relogio);
+        auditar("CANCELAMENTO", reserva.getPlaca(), reserva.getTipo(), agora, 0.0);
+        publicar(OperacaoReplicada.cancelamento(reserva.getPlaca(), reserva.getTipo()), agora);
+        return true;
+    }
+    
+    /**
+     * Retorna a reserva pendente de uma placa.
+     * @param placa Placa do veículo
+     * @return Reserva pendente ou null
+     */
+    public Reserva buscarReserva(String placa) {
+        return agendaReservas.buscarReserva(placa);
+    }
+    
+    /**
+     * Retorna as reservas pendentes que ainda não terminaram.
+     * @return Lista de reservas
+     */
+    public List<Reserva> getReservas() {
+        return agendaReservas.getReservas(LocalDateTime.now(relogio));
+    }
+    
+    /**
+     * Retorna quantas vagas estão reservadas agora para veículos que ainda não chegaram.
+     * @return Número de vagas reservadas
+     */
+    public int getVagasReservadas() {
+        return getVagasReservadas(LocalDateTime.now(relogio));
+    }
+    
+    // Reservas em vigor no momento, sem contar as de veículos que chegaram antes do período e
+    // ainda estão estacionados: esses já ocupam uma vaga física e não podem ocupar outra reservada
+    private int getVagasReservadas(LocalDateTime momento) {
+        int reservadas = agendaReservas.getReservasPendentes(momento);
+        if (reservadas > 0) {
+            for (String placa : estacionadosComReserva) {
+                if (agendaReservas.isReservaEmVigor(placa, momento)) {
+                    reservadas--;
+                }
             }
         }
-        return null;
+        return reservadas;
+    }
+    
+    // Verifica se o veículo pode estacionar: com reserva basta vaga física, sem reserva as reservadas não contam
+    private boolean temVagaPara(Veiculo veiculo, LocalDateTime momento) {
+        if (agendaReservas.buscarReservaAtiva(veiculo.getPlaca(), momento) != null) {
+            return estacionados.size() < capacidadeTotal;
+        }
+        return estacionados.size() + getVagasReservadas(momento) < capacidadeTotal;
+    }
+    
+    // Estaciona o veículo, utilizando a reserva dele se a chegada estiver dentro do período (ou da tolerância).
+    // Uma reserva para outro período continua pendente: se o veículo sair antes, ela segue valendo
+    private boolean admitir(Veiculo veiculo, LocalDateTime momento) {
+        Reserva reserva = agendaReservas.buscarReservaAtiva(veiculo.getPlaca(), momento);
+        if (reserva != null) {
+            agendaReservas.utilizar(reserva, momento);
+        }
+        estacionar(veiculo);
+        return reserva != null;
+    }
+    
+    // Estaciona o veículo, mantendo o histórico e o índice de presentes
+    private void estacionar(Veiculo veiculo) {
+        String chave = veiculo.getPlaca().toUpperCase();
+        veiculos.add(veiculo);
+        estacionados.put(chave, veiculo);
+        if (agendaReservas.buscarReserva(chave) != null) {
+            estacionadosComReserva.add(chave);
+        }
+        estimadorEspera.invalidar();
+    }
+    
+    // Grava a operação no diário e a envia aos nós seguidores, com o momento do relógio usado nela.
+    // A operação é numerada e gravada antes de qualquer seguidor recebê-la, para que um seguidor
+    // promovido nunca tenha uma operação que o diário do primário não tem.
+    // Chamado sempre ao final da operação, quando o estado já está completo para uma eventual compactação.
+    private void publicar(OperacaoReplicada operacao, LocalDateTime agora) {
+        operacao.setRegistradaEm(agora);
+        if (replicacao != null) {
+            replicacao.numerar(operacao);
+        }
+        if (diario != null) {
+            diario.registrar(operacao);
+        }
+        if (replicacao != null) {
+            replicacao.publicar(operacao);
+            replicacao.compactarSeNecessario(this);
+        }
+        if (diario != null) {
+            diario.salvarImagemSeNecessario(this);
+        }
+    }
+    
+    // Registra a transação no log de auditoria, se houver
+    private void auditar(String operacao, Veiculo veiculo, LocalDateTime momento, double valor) {
+        auditar(operacao, veiculo.getPlaca(), veiculo.getTipo(), momento, valor);
+    }
+    
+    private void auditar(String operacao, String placa, String tipo, LocalDateTime momento, double valor) {
+        if (auditoria != null) {
+            auditoria.registrar(operacao, placa, tipo, momento, valor);
+        }
+    }
+    
+    // Busca veículo estacionado pela placa
+    public Veiculo buscarVeiculoEstacionado(String placa) {
+        return estacionados.get(placa.toUpperCase());
     }
     
     // Retorna lista de veículos estacionados
     public List<Veiculo> getVeiculosEstacionados() {
-        List<Veiculo> estacionados = new ArrayList<>();
-        for (Veiculo v : veiculos) {
-            if (v.getDataSaida() == null) {
-                estacionados.add(v);
-            }
-        }
-        return estacionados;
+        return new ArrayList<>(estacionados.values());
     }
     
     // Retorna lista de todos os veículos (histórico)
     public List<Veiculo> getTodosVeiculos() {
-        return new ArrayList<>(veiculos);
+        List<Veiculo> todos = new ArrayList<>(historicoCarregado.size() + veiculos.size());
+        todos.addAll(historicoCarregado);
+        todos.addAll(veiculos);
+        return todos;
     }
     
     // Retorna número de vagas ocupadas
     public int getVagasOcupadas() {
-        return getVeiculosEstacionados().size();
+        return estacionados.size();
     }
     
-    // Retorna número de vagas disponíveis
+    // Retorna número de vagas disponíveis (descontando as reservadas para veículos que ainda não chegaram)
     public int getVagasDisponiveis() {
-        return capacidadeTotal - getVagasOcupadas();
+        return Math.max(0, capacidadeTotal - getVagasOcupadas() - getVagasReservadas());
     }
     
     // Retorna capacidade total
@@ -140,37 +503,43 @@ public class Estacionamento {
     
     // Gera relatório de veículos estacionados
     public void gerarRelatorioEstacionados() {
-        List<Veiculo> estacionados = getVeiculosEstacionados();
-        System.out.println("\n=== RELATÓRIO DE VEÍCULOS ESTACIONADOS ===");
-        System.out.println("Total de vagas: " + capacidadeTotal);
-        System.out.println("Vagas ocupadas: " + getVagasOcupadas());
-        System.out.println("Vagas disponíveis: " + getVagasDisponiveis());
-        System.out.println("\nVeículos estacionados:");
+        StringBuilder relatorio = new StringBuilder();
+        relatorio.append("\n=== RELATÓRIO DE VEÍCULOS ESTACIONADOS ===\n");
+        relatorio.append("Total de vagas: ").append(capacidadeTotal).append("\n");
+        relatorio.append("Vagas ocupadas: ").append(getVagasOcupadas()).append("\n");
+        relatorio.append("Vagas disponíveis: ").append(getVagasDisponiveis()).append("\n");
+        relatorio.append("\nVeículos estacionados:\n");
         
         if (estacionados.isEmpty()) {
-            System.out.println("Nenhum veículo estacionado no momento.");
+            relatorio.append("Nenhum veículo estacionado no momento.\n");
         } else {
-            for (Veiculo v : estacionados) {
-                System.out.println("- " + v.toString());
+            for (Veiculo v : estacionados.values()) {
+                relatorio.append("- ").append(v.toString()).append("\n");
             }
         }
-        System.out.println("==========================================\n");
+        relatorio.append("==========================================\n");
+        saida.println(relatorio.toString());
     }
     
     // Gera relatório completo (histórico)
     public void gerarRelatorioCompleto() {
-        System.out.println("\n=== RELATÓRIO COMPLETO ===");
-        System.out.println("Total de veículos atendidos: " + veiculos.size());
-        System.out.println("\nHistórico completo:");
+        StringBuilder relatorio = new StringBuilder();
+        relatorio.append("\n=== RELATÓRIO COMPLETO ===\n");
+        relatorio.append("Total de veículos atendidos: ").append(historicoCarregado.size() + veiculos.size()).append("\n");
+        relatorio.append("\nHistórico completo:\n");
         
-        if (veiculos.isEmpty()) {
-            System.out.println("Nenhum veículo registrado.");
+        if (historicoCarregado.isEmpty() && veiculos.isEmpty()) {
+            relatorio.append("Nenhum veículo registrado.\n");
         } else {
+            for (Veiculo v : historicoCarregado) {
+                relatorio.append("- ").append(v.toString()).append("\n");
+            }
             for (Veiculo v : veiculos) {
-                System.out.println("- " + v.toString());
+                relatorio.append("- ").append(v.toString()).append("\n");
             }
         }
-        System.out.println("==========================\n");
+        relatorio.append("==========================\n");
+        saida.println(relatorio.toString());
     }
     
     /**
@@ -185,9 +554,9 @@ public class Estacionamento {
      * Gera relatório de faturamento mostrando o total arrecadado.
      */
     public void gerarRelatorioFaturamento() {
-        System.out.println("\n=== RELATÓRIO DE FATURAMENTO ===");
-        System.out.println("Total arrecadado: R$ " + String.format("%.2f", totalArrecadado));
-        System.out.println("===============================\n");
+        saida.println("\n=== RELATÓRIO DE FATURAMENTO ===\n"
+                + "Total arrecadado: R$ " + String.format("%.2f", totalArrecadado) + "\n"
+                + "===============================\n");
     }
     
     /**
@@ -196,16 +565,7 @@ public class Estacionamento {
      * @return Total arrecadado no dia especificado
      */
     public double getTotalArrecadadoPorDia(LocalDate data) {
-        double total = 0.0;
-        for (Veiculo v : veiculos) {
-            if (v.getDataSaida() != null) {
-                LocalDate dataSaida = v.getDataSaida().toLocalDate();
-                if (dataSaida.equals(data)) {
-                    total += v.calcularValor();
-                }
-            }
-        }
-        return total;
+        return arrecadadoPorDia.getOrDefault(data, 0.0);
     }
     
     /**
@@ -223,6 +583,84 @@ public class Estacionamento {
     public List<Veiculo> getFilaEspera() {
         return new ArrayList<>(filaEspera);
     }
+    
+    // Define o relógio usado pelas operações (usado ao aplicar operações replicadas)
+    void setRelogio(Clock relogio) {
+        this.relogio = relogio;
+    }
+    
+    // ---- Restauração e exportação do estado (usadas pela ImagemEstado) ----
+    
+    // Descarta todo o estado, mantendo a saída, a auditoria e a replicação configuradas
+    void reiniciar(int capacidadeTotal) {
+        this.veiculos = new ArrayList<>();
+        this.historicoCarregado = Collections.emptyList();
+        this.estacionados = new LinkedHashMap<>();
+        this.capacidadeTotal = capacidadeTotal;
+        this.totalArrecadado = 0.0;
+        this.arrecadadoPorDia = new HashMap<>();
+        this.filaEspera = new LinkedList<>();
+        this.tarifaDinamica = null;
+        this.estimadorEspera = new EstimadorEspera();
+        this.agendaReservas = new AgendaReservas(capacidadeTotal, LocalDateTime.now(relogio));
+        this.estacionadosComReserva = new HashSet<>();
+    }
+    
+    // Restaura o histórico e os totais de uma execução anterior, sem auditar nem replicar
+    void restaurarHistorico(List<Veiculo> historico, double totalArrecadado, Map<LocalDate, Double> arrecadadoPorDia) {
+        this.historicoCarregado = historico;
+        this.totalArrecadado = totalArrecadado;
+        this.arrecadadoPorDia = new HashMap<>(arrecadadoPorDia);
+    }
+    
+    // Restaura um veículo estacionado, sem auditar nem replicar
+    void restaurarEstacionado(Veiculo veiculo) {
+        estacionar(veiculo);
+    }
+    
+    // Restaura um veículo na fila de espera, mantendo a ordem
+    void restaurarFila(Veiculo veiculo) {
+        filaEspera.offer(veiculo);
+        estimadorEspera.invalidar();
+    }
+    
+    // Restaura uma reserva pendente
+    void restaurarReserva(Reserva reserva) {
+        if (agendaReservas.reservar(reserva, LocalDateTime.now(relogio))
+                && estacionados.containsKey(reserva.getPlaca().toUpperCase())) {
+            estacionadosComReserva.add(reserva.getPlaca().toUpperCase());
+        }
+    }
+    
+    // Restaura a tarifa dinâmica com as faixas já registradas, sem replicar a ativação
+    void restaurarTarifaDinamica(TarifaDinamica tarifa) {
+        this.tarifaDinamica = tarifa;
+    }
+    
+    TarifaDinamica getTarifaDinamica() {
+        return tarifaDinamica;
+    }
+    
+    EstimadorEspera getEstimadorEspera() {
+        return estimadorEspera;
+    }
+    
+    List<Veiculo> getHistoricoCarregado() {
+        return historicoCarregado;
+    }
+    
+    // Veículos desta execução que já saíram
+    List<Veiculo> getSaidasDaSessao() {
+        List<Veiculo> saidas = new ArrayList<>();
+        for (Veiculo v : veiculos) {
+            if (v.getDataSaida() != null) {
+                saidas.add(v);
+            }
+        }
+        return saidas;
+    }
+    
+    Map<LocalDate, Double> getArrecadadoPorDia() {
+        return Collections.unmodifiableMap(arrecadadoPorDia);
+    }
 }
-
-
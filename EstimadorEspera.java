@@ -0,0 +1,280 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Estimador do tempo de espera da fila.
+ * Mantém histogramas de tamanho fixo (memória constante) dos tempos de permanência
+ * por tipo de veículo e hora de entrada. Combinando esses histogramas com o tempo já
+ * decorrido de cada veículo estacionado, prevê quando as próximas vagas serão liberadas.
+ * Vagas liberadas durante uma reserva pendente ficam com a reserva até o fim do período.
+ * A previsão é calculada uma vez por mudança de estado (ou por minuto) e depois
+ * consultada por posição da fila em tempo constante.
+ */
+public class EstimadorEspera {
+    private static final int TIPOS = 2;             // 0 = Carro e outros, 1 = Moto
+    private static final int HORAS = 24;
+    private static final int FAIXAS = 64;           // Faixas logarítmicas: 4 por potência de 2 minutos
+    private static final int AMOSTRAS_MINIMAS = 5;  // Abaixo disso, usa o histograma mais geral
+    private static final long PERMANENCIA_PADRAO = 120; // Minutos, quando não há histórico
+    private static final long RESTANTE_MINIMO = 1;
+
+    private final long[][][] porHora;  // [tipo][hora de entrada][faixa]
+    private final long[][] totalPorHora;
+    private final long[][] porTipo;    // [tipo][faixa]
+    private final long[] totalPorTipo;
+
+    // Previsão em cache: minutos, a partir de minutoPrevisao, até cada liberação de vaga
+    private long[] liberacoes;
+    private long minutoPrevisao;
+    private boolean previsaoValida;
+
+    /**
+     * Cria o estimador sem histórico.
+     */
+    public EstimadorEspera() {
+        this.porHora = new long[TIPOS][HORAS][FAIXAS];
+        this.totalPorHora = new long[TIPOS][HORAS];
+        this.porTipo = new long[TIPOS][FAIXAS];
+        this.totalPorTipo = new long[TIPOS];
+        this.liberacoes = new long[0];
+        this.previsaoValida = false;
+    }
+
+    /**
+     * Acrescenta ao histórico a permanência de um veículo que saiu.
+     * @param veiculo Veículo com data de saída registrada
+     */
+    public void registrarPermanencia(Veiculo veiculo) {
+        if (veiculo.getDataSaida() == null) {
+            return;
+        }
+        long minutos = Math.max(0, Duration.between(veiculo.getDataEntrada(), veiculo.getDataSaida()).toMinutes());
+        int tipo = indiceTipo(veiculo.getTipo());
+        int hora = veiculo.getDataEntrada().getHour();
+        int faixa = faixa(minutos);
+
+        porHora[tipo][hora][faixa]++;
+        totalPorHora[tipo][hora]++;
+        porTipo[tipo][faixa]++;
+        totalPorTipo[tipo]++;
+        previsaoValida = false;
+    }
+
+    /**
+     * Retorna as contagens dos histogramas por tipo e hora de entrada, para gravação em uma imagem de estado.
+     * Os histogramas por tipo e os totais são derivados delas.
+     * @return Contagens na ordem [tipo][hora][faixa], em uma única dimensão
+     */
+    long[] getHistogramas() {
+        long[] contagens = new long[TIPOS * HORAS * FAIXAS];
+        int i = 0;
+        for (int tipo = 0; tipo < TIPOS; tipo++) {
+            for (int hora = 0; hora < HORAS; hora++) {
+                System.arraycopy(porHora[tipo][hora], 0, contagens, i, FAIXAS);
+                i += FAIXAS;
+            }
+        }
+        return contagens;
+    }
+
+    /**
+     * Substitui o histórico pelas contagens gravadas em uma imagem de estado.
+     * @param contagens Contagens no formato de getHistogramas()
+     * @throws IllegalArgumentException se o número de contagens não corresponder aos histogramas
+     */
+    void restaurarHistogramas(long[] contagens) {
+        if (contagens.length != TIPOS * HORAS * FAIXAS) {
+            throw new IllegalArgumentException("Histogramas com " + contagens.length + " contagens");
+        }
+        int i = 0;
+        for (int tipo = 0; tipo < TIPOS; tipo++) {
+            Arrays.fill(porTipo[tipo], 0);
+            totalPorTipo[tipo] = 0;
+            for (int hora = 0; hora < HORAS; hora++) {
+                totalPorHora[tipo][hora] = 0;
+                for (int faixa = 0; faixa < FAIXAS; faixa++, i++) {
+                    porHora[tipo][hora][faixa] = contagens[i];
+                    totalPorHora[tipo][hora] += contagens[i];
+                    porTipo[tipo][faixa] += contagens[i];
+                    totalPorTipo[tipo] += contagens[i];
+                }
+            }
+        }
+        previsaoValida = false;
+    }
+
+    /**
+     * Descarta a previsão em cache. Deve ser chamado a cada entrada, saída, mudança na fila
+     * ou nas reservas.
+     */
+    public void invalidar() {
+        previsaoValida = false;
+    }
+
+    /**
+     * Estima a espera, em minutos, do veículo em uma posição da fila.
+     * @param posicao Posição na fila (começando em 1)
+     * @param estacionados Veículos atualmente estacionados
+     * @param fila Veículos na fila, na ordem de entrada
+     * @param reservas Reservas pendentes
+     * @param capacidade Número total de vagas
+     * @param agora Data e hora atual
+     * @return Minutos estimados até a vaga, ou -1 se não houver previsão
+     */
+    public long estimarEsperaMinutos(int posicao, Collection<Veiculo> estacionados, Collection<Veiculo> fila,
+                                     Collection<Reserva> reservas, int capacidade, LocalDateTime agora) {
+        long[] previsao = preverLiberacoes(estacionados, fila, reservas, capacidade, agora);
+        if (posicao < 1 || posicao > previsao.length) {
+            return -1;
+        }
+        return previsao[posicao - 1];
+    }
+
+    /**
+     * Prevê, em minutos a partir de agora, quando cada uma das próximas vagas será liberada.
+     * Cada vaga liberada recebe o próximo veículo da fila, cuja permanência também é estimada.
+     * Uma reserva que já começou quando a vaga é liberada fica com ela até o fim do período;
+     * reservas de veículos presentes ou na fila não contam, pois eles já ocupam ou aguardam vaga.
+     * @param estacionados Veículos atualmente estacionados
+     * @param fila Veículos na fila, na ordem de entrada
+     * @param reservas Reservas pendentes
+     * @param capacidade Número total de vagas
+     * @param agora Data e hora atual
+     * @return Minutos até cada liberação, em ordem crescente (não deve ser modificado)
+     */
+    public long[] preverLiberacoes(Collection<Veiculo> estacionados, Collection<Veiculo> fila,
+                                   Collection<Reserva> reservas, int capacidade, LocalDateTime agora) {
+        long minutoAgora = agora.toEpochSecond(ZoneOffset.UTC) / 60;
+        if (previsaoValida && minutoAgora == minutoPrevisao) {
+            return liberacoes;
+        }
+
+        PriorityQueue<Long> proximas = new PriorityQueue<>();
+        for (Veiculo v : estacionados) {
+            long decorrido = Math.max(0, Duration.between(v.getDataEntrada(), agora).toMinutes());
+            proximas.add(minutosRestantes(indiceTipo(v.getTipo()), v.getDataEntrada().getHour(), decorrido));
+        }
+        long[][] periodos = periodosReservados(estacionados, fila, reservas, agora);
+        if (periodos.length > 0) {
+            // Vagas livres agora contam como liberadas no minuto 0, para que as reservas em vigor fiquem com elas
+            for (int livre = estacionados.size(); livre < capacidade; livre++) {
+                proximas.add(0L);
+            }
+        }
+
+        long[] resultado = new long[fila.size() + proximas.size()];
+        int i = 0;
+        int r = 0;
+        for (Veiculo v : fila) {
+            r = ocuparComReservas(proximas, periodos, r);
+            if (proximas.isEmpty()) {
+                break;
+            }
+            long liberacao = proximas.poll();
+            resultado[i++] = liberacao;
+            // O veículo da fila ocupa a vaga liberada e sairá após sua permanência estimada
+            int hora = agora.plusMinutes(liberacao).getHour();
+            proximas.add(liberacao + minutosRestantes(indiceTipo(v.getTipo()), hora, 0));
+        }
+        ocuparComReservas(proximas, periodos, r);
+        while (!proximas.isEmpty()) {
+            resultado[i++] = proximas.poll();
+        }
+
+        liberacoes = Arrays.copyOf(resultado, i);
+        minutoPrevisao = minutoAgora;
+        previsaoValida = true;
+        return liberacoes;
+    }
+
+    // As reservas que começam até a próxima vaga ser liberada ficam com ela até o fim do período.
+    // Retorna o índice da primeira reserva ainda sem vaga
+    private static int ocuparComReservas(PriorityQueue<Long> proximas, long[][] periodos, int r) {
+        while (!proximas.isEmpty() && r < periodos.length && periodos[r][0] <= proximas.peek()) {
+            long vaga = proximas.poll();
+            proximas.add(Math.max(vaga, periodos[r++][1]));
+        }
+        return r;
+    }
+
+    // Períodos, em minutos a partir de agora, das reservas que ainda vão ocupar vaga, ordenados pelo início
+    private static long[][] periodosReservados(Collection<Veiculo> estacionados, Collection<Veiculo> fila,
+                                               Collection<Reserva> reservas, LocalDateTime agora) {
+        if (reservas.isEmpty()) {
+            return new long[0][];
+        }
+        Set<String> presentes = new HashSet<>();
+        for (Veiculo v : estacionados) {
+            presentes.add(v.getPlaca().toUpperCase());
+        }
+        for (Veiculo v : fila) {
+            presentes.add(v.getPlaca().toUpperCase());
+        }
+        long[][] periodos = new long[reservas.size()][];
+        int n = 0;
+        for (Reserva reserva : reservas) {
+            if (reserva.getFim().isAfter(agora) && !presentes.contains(reserva.getPlaca().toUpperCase())) {
+                long inicio = Math.max(0, Duration.between(agora, reserva.getInicio()).toMinutes());
+                periodos[n++] = new long[] { inicio, Duration.between(agora, reserva.getFim()).toMinutes() };
+            }
+        }
+        periodos = Arrays.copyOf(periodos, n);
+        Arrays.sort(periodos, (a, b) -> Long.compare(a[0], b[0]));
+        return periodos;
+    }
+
+    // Mediana da permanência restante, dado o tempo já decorrido
+    private long minutosRestantes(int tipo, int hora, long decorrido) {
+        long[] histograma;
+        if (totalPorHora[tipo][hora] >= AMOSTRAS_MINIMAS) {
+            histograma = porHora[tipo][hora];
+        } else if (totalPorTipo[tipo] >= AMOSTRAS_MINIMAS) {
+            histograma = porTipo[tipo];
+        } else {
+            return Math.max(RESTANTE_MINIMO, PERMANENCIA_PADRAO - decorrido);
+        }
+
+        // Considera apenas permanências que ainda não terminaram
+        int inicio = faixa(decorrido);
+        long restantes = 0;
+        for (int f = inicio; f < FAIXAS; f++) {
+            restantes += histograma[f];
+        }
+        if (restantes == 0) {
+            return RESTANTE_MINIMO;
+        }
+
+        long metade = (restantes + 1) / 2;
+        long acumulado = 0;
+        for (int f = inicio; f < FAIXAS; f++) {
+            acumulado += histograma[f];
+            if (acumulado >= metade) {
+                long mediana = Math.max(decorrido, pontoMedio(f));
+                return Math.max(RESTANTE_MINIMO, mediana - decorrido);
+            }
+        }
+        return RESTANTE_MINIMO;
+    }
+
+    private static int indiceTipo(String tipo) {
+        return tipo.equalsIgnoreCase("Moto") ? 1 : 0;
+    }
+
+    // Faixa f cobre [2^(f/4) - 1, 2^((f+1)/4) - 1) minutos
+    private static int faixa(long minutos) {
+        int f = (int) (4 * (Math.log(1 + minutos) / Math.log(2)));
+        return Math.min(FAIXAS - 1, Math.max(0, f));
+    }
+
+    private static long pontoMedio(int faixa) {
+        double inferior = Math.pow(2, faixa / 4.0) - 1;
+        double superior = Math.pow(2, (faixa + 1) / 4.0) - 1;
+        return Math.round(Math.sqrt((inferior + 1) * (superior + 1)) - 1);
+    }
+}
@@ -0,0 +1,475 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Imagem binária compacta do estado do estacionamento, para reinício rápido.
+ * O cabeçalho guarda capacidade, totais, o faturamento por dia, as faixas da tarifa
+ * dinâmica e os histogramas de permanência do estimador de espera; os veículos são
+ * registros de tamanho fixo. Ao carregar, o arquivo é mapeado em memória: veículos
+ * estacionados, fila e reservas são recriados, mas o histórico de saídas só vira
+ * objeto Veiculo quando é consultado. Ao salvar, o histórico já mapeado é copiado
+ * byte a byte, sem ser recriado. O mesmo formato é usado pela replicação para enviar
+ * o estado completo a um seguidor. Cada imagem gravada em arquivo recebe um identificador,
+ * usado pelo DiarioOperacoes para saber a partir de qual imagem suas operações valem.
+ *
+ * Formato (big-endian):
+ *   int MAGICO, int VERSAO, long identificador (0 na imagem enviada pela replicação)
+ *   int capacidade, double totalArrecadado, byte tarifaDinamica
+ *   se tarifaDinamica != 0: long faixaInicial, long faixaAtual, double multiplicadorAtual,
+ *     double ultimaOcupacao, int nFaixas, nFaixas x double prefixo (somas acumuladas a partir da 1ª faixa)
+ *   int nContagens, nContagens x long (histogramas do estimador de espera)
+ *   int nTipos, nTipos x (short tamanho, bytes UTF-8)
+ *   int nDias, nDias x (long diaEpoca, double total)
+ *   long nHistorico, int nEstacionados, int nFila, int nReservas
+ *   registros: histórico, estacionados, fila, reservas (entrada/início, saída/fim, valor, tipo, placa)
+ */
+public class ImagemEstado {
+    private static final int MAGICO = 0x45535443; // "ESTC"
+    private static final int VERSAO = 3;
+    static final int TAMANHO_PLACA = 23;           // Bytes UTF-8 máximos da placa
+    private static final int TAMANHO_REGISTRO = 8 + 8 + 8 + 2 + 1 + TAMANHO_PLACA;
+    private static final long SEM_DATA = Long.MIN_VALUE;
+    private static final int TAMANHO_BLOCO = 1 << 20;
+
+    private ImagemEstado() {
+    }
+
+    /**
+     * Grava o estado do estacionamento.
+     * O arquivo é escrito em um temporário e só então substitui o anterior; se a
+     * substituição não for possível (arquivo anterior ainda mapeado no Windows), a nova
+     * imagem fica em "arquivo.novo" e é adotada no próximo carregamento.
+     * @param estacionamento Estacionamento a ser gravado
+     * @param arquivo Caminho da imagem
+     * @return Identificador da nova imagem (nunca 0)
+     * @throws IOException se a gravação falhar ou alguma placa exceder 23 bytes
+     */
+    public static long salvar(Estacionamento estacionamento, Path arquivo) throws IOException {
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        Path novo = arquivo.resolveSibling(arquivo.getFileName() + ".novo");
+        long identificador = UUID.randomUUID().getMostSignificantBits(); // Os bits de versão nunca são todos zero
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escrever(estacionamento, canal, identificador);
+            canal.force(true);
+        }
+
+        Files.move(temporario, novo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(novo, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Imagem anterior em uso: a nova será adotada no próximo carregamento
+        }
+        return identificador;
+    }
+
+    /**
+     * Codifica o estado do estacionamento em memória, no mesmo formato do arquivo.
+     * @param estacionamento Estacionamento a ser codificado
+     * @return Bytes da imagem
+     * @throws IOException se alguma placa exceder 23 bytes
+     */
+    public static byte[] serializar(Estacionamento estacionamento) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        escrever(estacionamento, Channels.newChannel(bytes), 0);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lê a imagem gravada por salvar() para a memória, sem mapear o arquivo
+     * (usado por outro nó, que não deve manter o arquivo aberto).
+     * @param arquivo Caminho da imagem
+     * @return Bytes da imagem, no formato aceito por restaurar()
+     * @throws IOException se o arquivo não puder ser lido
+     */
+    public static ByteBuffer lerArquivo(Path arquivo) throws IOException {
+        Path novo = arquivo.resolveSibling(arquivo.getFileName() + ".novo");
+        return ByteBuffer.wrap(Files.readAllBytes(Files.exists(novo) ? novo : arquivo));
+    }
+
+    /**
+     * Lê o identificador da imagem gravada por salvar(), sem ler o restante do arquivo.
+     * @param arquivo Caminho da imagem
+     * @return Identificador da imagem
+     * @throws IOException se o arquivo não puder ser lido ou não for uma imagem desta versão
+     */
+    public static long getIdentificador(Path arquivo) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(16);
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            while (cabecalho.hasRemaining() && canal.read(cabecalho) >= 0) {
+                // Lê até completar o cabeçalho ou chegar ao fim do arquivo
+            }
+        }
+        cabecalho.flip();
+        return getIdentificador(cabecalho);
+    }
+
+    /**
+     * Retorna o identificador de uma imagem, sem decodificá-la.
+     * @param imagem Bytes da imagem
+     * @return Identificador atribuído por salvar() (0 se a imagem veio de serializar())
+     * @throws IOException se os bytes não forem uma imagem de estado desta versão
+     */
+    public static long getIdentificador(ByteBuffer imagem) throws IOException {
+        if (imagem.limit() < 16 || imagem.getInt(0) != MAGICO || imagem.getInt(4) != VERSAO) {
+            throw new IOException("Dados não são uma imagem de estado válida");
+        }
+        return imagem.getLong(8);
+    }
+
+    /**
+     * Carrega o estado gravado por salvar().
+     * O histórico de saídas permanece no arquivo mapeado e é recriado sob demanda.
+     * @param arquivo Caminho da imagem
+     * @return Estacionamento restaurado
+     * @throws IOException se o arquivo não existir, estiver corrompido ou for de outra versão
+     */
+    public static Estacionamento carregar(Path arquivo) throws IOException {
+        Path novo = arquivo.resolveSibling(arquivo.getFileName() + ".novo");
+        if (Files.exists(novo)) {
+            Files.move(novo, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        MappedByteBuffer mapa;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Imagem de estado maior que 2 GB: " + arquivo);
+            }
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        return ler(mapa, null, arquivo.toString());
+    }
+
+    /**
+     * Substitui todo o estado de um estacionamento pelo de uma imagem em memória
+     * (usado pelo seguidor ao receber o estado do primário).
+     * @param estacionamento Estacionamento cujo estado será substituído
+     * @param imagem Bytes gerados por serializar()
+     * @throws IOException se a imagem estiver corrompida ou for de outra versão
+     */
+    public static void restaurar(Estacionamento estacionamento, ByteBuffer imagem) throws IOException {
+        ler(imagem, estacionamento, "imagem recebida");
+    }
+
+    // Decodifica a imagem em um novo estacionamento (destino nulo) ou no destino informado
+    private static Estacionamento ler(ByteBuffer mapa, Estacionamento destino, String origem) throws IOException {
+        try {
+            if (mapa.getInt() != MAGICO || mapa.getInt() != VERSAO) {
+                throw new IOException("Arquivo não é uma imagem de estado válida: " + origem);
+            }
+            mapa.getLong(); // Identificador
+            int capacidade = mapa.getInt();
+            double totalArrecadado = mapa.getDouble();
+            TarifaDinamica tarifa = null;
+            if (mapa.get() != 0) {
+                long faixaInicial = mapa.getLong();
+                long faixaAtual = mapa.getLong();
+                double multiplicadorAtual = mapa.getDouble();
+                double ultimaOcupacao = mapa.getDouble();
+                int nFaixas = mapa.getInt();
+                double[] prefixos = new double[nFaixas + 1];
+                for (int i = 1; i <= nFaixas; i++) {
+                    prefixos[i] = mapa.getDouble();
+                }
+                tarifa = new TarifaDinamica(faixaInicial, faixaAtual, multiplicadorAtual, ultimaOcupacao,
+                        prefixos, nFaixas);
+            }
+            long[] histogramas = new long[mapa.getInt()];
+            for (int i = 0; i < histogramas.length; i++) {
+                histogramas[i] = mapa.getLong();
+            }
+
+            int nTipos = mapa.getInt();
+            List<String> tipos = new ArrayList<>(nTipos);
+            for (int i = 0; i < nTipos; i++) {
+                byte[] bytes = new byte[mapa.getShort()];
+                mapa.get(bytes);
+                tipos.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            int nDias = mapa.getInt();
+            Map<LocalDate, Double> porDia = new HashMap<>();
+            for (int i = 0; i < nDias; i++) {
+                porDia.put(LocalDate.ofEpochDay(mapa.getLong()), mapa.getDouble());
+            }
+            long nHistorico = mapa.getLong();
+            int nEstacionados = mapa.getInt();
+            int nFila = mapa.getInt();
+            int nReservas = mapa.getInt();
+
+            int inicioHistorico = mapa.position();
+            long fimHistorico = inicioHistorico + nHistorico * TAMANHO_REGISTRO;
+            if (fimHistorico + (long) (nEstacionados + nFila + nReservas) * TAMANHO_REGISTRO != mapa.limit()) {
+                throw new IOException("Imagem de estado incompleta: " + origem);
+            }
+
+            Estacionamento estacionamento = destino;
+            if (estacionamento == null) {
+                estacionamento = new Estacionamento(capacidade);
+            } else {
+                estacionamento.reiniciar(capacidade);
+            }
+            estacionamento.getEstimadorEspera().restaurarHistogramas(histogramas);
+            estacionamento.restaurarHistorico(new HistoricoMapeado(mapa, inicioHistorico, (int) nHistorico, tipos),
+                    totalArrecadado, porDia);
+
+            int posicao = (int) fimHistorico;
+            for (int i = 0; i < nEstacionados; i++, posicao += TAMANHO_REGISTRO) {
+                estacionamento.restaurarEstacionado(lerVeiculo(mapa, posicao, tipos));
+            }
+            for (int i = 0; i < nFila; i++, posicao += TAMANHO_REGISTRO) {
+                estacionamento.restaurarFila(lerVeiculo(mapa, posicao, tipos));
+            }
+            for (int i = 0; i < nReservas; i++, posicao += TAMANHO_REGISTRO) {
+                Veiculo v = lerVeiculo(mapa, posicao, tipos);
+                estacionamento.restaurarReserva(new Reserva(v.getPlaca(), v.getTipo(), v.getDataEntrada(), v.getDataSaida()));
+            }
+            estacionamento.restaurarTarifaDinamica(tarifa);
+            return estacionamento;
+        } catch (RuntimeException e) {
+            throw new IOException("Imagem de estado corrompida: " + origem, e);
+        }
+    }
+
+    // Codifica a imagem completa no canal informado
+    private static void escrever(Estacionamento estacionamento, WritableByteChannel canal, long identificador)
+            throws IOException {
+        List<Veiculo> historico = estacionamento.getHistoricoCarregado();
+        List<Veiculo> saidas = estacionamento.getSaidasDaSessao();
+        List<Veiculo> estacionados = estacionamento.getVeiculosEstacionados();
+        List<Veiculo> fila = estacionamento.getFilaEspera();
+        List<Reserva> reservas = estacionamento.getReservas();
+
+        // A tabela de tipos começa pela da imagem carregada, para que o histórico possa ser copiado direto
+        List<String> tipos = new ArrayList<>();
+        if (historico instanceof HistoricoMapeado) {
+            tipos.addAll(((HistoricoMapeado) historico).tipos);
+        }
+        Map<String, Integer> indiceTipos = new HashMap<>();
+        for (int i = 0; i < tipos.size(); i++) {
+            indiceTipos.put(tipos.get(i), i);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BLOCO);
+
+        // Os registros são codificados antes do cabeçalho para completar a tabela de tipos
+        ByteBuffer registros = ByteBuffer.allocate(TAMANHO_REGISTRO
+                * (saidas.size() + estacionados.size() + fila.size() + reservas.size()));
+        for (Veiculo v : saidas) {
+            escreverVeiculo(registros, v, tipos, indiceTipos);
+        }
+        for (Veiculo v : estacionados) {
+            escreverVeiculo(registros, v, tipos, indiceTipos);
+        }
+        for (Veiculo v : fila) {
+            escreverVeiculo(registros, v, tipos, indiceTipos);
+        }
+        for (Reserva r : reservas) {
+            escreverRegistro(registros, r.getInicio(), r.getFim(), 0.0, r.getTipo(), r.getPlaca(), tipos, indiceTipos);
+        }
+        registros.flip();
+        if (!(historico instanceof HistoricoMapeado)) {
+            for (Veiculo v : historico) {
+                indiceTipos.computeIfAbsent(v.getTipo(), t -> {
+                    tipos.add(t);
+                    return tipos.size() - 1;
+                });
+            }
+        }
+
+        buffer.putInt(MAGICO);
+        buffer.putInt(VERSAO);
+        buffer.putLong(identificador);
+        buffer.putInt(estacionamento.getCapacidadeTotal());
+        buffer.putDouble(estacionamento.getTotalArrecadado());
+        TarifaDinamica tarifa = estacionamento.getTarifaDinamica();
+        buffer.put((byte) (tarifa != null ? 1 : 0));
+        if (tarifa != null) {
+            buffer.putLong(tarifa.getFaixaInicial());
+            buffer.putLong(tarifa.getFaixaAtual());
+            buffer.putDouble(tarifa.getMultiplicadorAtual());
+            buffer.putDouble(tarifa.getUltimaOcupacao());
+            buffer.putInt(tarifa.getFaixasEncerradas());
+            for (int i = 1; i <= tarifa.getFaixasEncerradas(); i++) {
+                garantirEspaco(canal, buffer, 8);
+                buffer.putDouble(tarifa.getPrefixo(i));
+            }
+        }
+        long[] histogramas = estacionamento.getEstimadorEspera().getHistogramas();
+        garantirEspaco(canal, buffer, 4);
+        buffer.putInt(histogramas.length);
+        for (long contagem : histogramas) {
+            garantirEspaco(canal, buffer, 8);
+            buffer.putLong(contagem);
+        }
+        garantirEspaco(canal, buffer, 4);
+        buffer.putInt(tipos.size());
+        for (String tipo : tipos) {
+            byte[] bytes = tipo.getBytes(StandardCharsets.UTF_8);
+            garantirEspaco(canal, buffer, 2 + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+        Map<LocalDate, Double> porDia = estacionamento.getArrecadadoPorDia();
+        garantirEspaco(canal, buffer, 4);
+        buffer.putInt(porDia.size());
+        for (Map.Entry<LocalDate, Double> dia : porDia.entrySet()) {
+            garantirEspaco(canal, buffer, 16);
+            buffer.putLong(dia.getKey().toEpochDay());
+            buffer.putDouble(dia.getValue());
+        }
+        garantirEspaco(canal, buffer, 20);
+        buffer.putLong((long) historico.size() + saidas.size());
+        buffer.putInt(estacionados.size());
+        buffer.putInt(fila.size());
+        buffer.putInt(reservas.size());
+
+        // Histórico: cópia direta dos bytes mapeados, ou codificação se não veio de uma imagem
+        if (historico instanceof HistoricoMapeado) {
+            descarregar(canal, buffer);
+            ByteBuffer bruto = ((HistoricoMapeado) historico).bytes();
+            while (bruto.hasRemaining()) {
+                canal.write(bruto);
+            }
+        } else {
+            for (Veiculo v : historico) {
+                garantirEspaco(canal, buffer, TAMANHO_REGISTRO);
+                escreverVeiculo(buffer, v, tipos, indiceTipos);
+            }
+            descarregar(canal, buffer);
+        }
+        while (registros.hasRemaining()) {
+            canal.write(registros);
+        }
+    }
+
+    private static void escreverVeiculo(ByteBuffer buffer, Veiculo v, List<String> tipos,
+                                        Map<String, Integer> indiceTipos) throws IOException {
+        double valor = (v.getDataSaida() != null) ? v.getValorCobrado() : 0.0;
+        escreverRegistro(buffer, v.getDataEntrada(), v.getDataSaida(), valor, v.getTipo(), v.getPlaca(), tipos, indiceTipos);
+    }
+
+    private static void escreverRegistro(ByteBuffer buffer, LocalDateTime entrada, LocalDateTime saida, double valor,
+                                         String tipo, String placa, List<String> tipos,
+                                         Map<String, Integer> indiceTipos) throws IOException {
+        byte[] bytesPlaca = placa.getBytes(StandardCharsets.UTF_8);
+        if (bytesPlaca.length > TAMANHO_PLACA) {
+            throw new IOException("Placa muito longa para a imagem de estado: " + placa);
+        }
+        Integer indice = indiceTipos.get(tipo);
+        if (indice == null) {
+            indice = tipos.size();
+            tipos.add(tipo);
+            indiceTipos.put(tipo, indice);
+        }
+
+        buffer.putLong(paraMillis(entrada));
+        buffer.putLong(paraMillis(saida));
+        buffer.putDouble(valor);
+        buffer.putShort(indice.shortValue());
+        buffer.put((byte) bytesPlaca.length);
+        buffer.put(bytesPlaca);
+        buffer.position(buffer.position() + TAMANHO_PLACA - bytesPlaca.length);
+    }
+
+    private static Veiculo lerVeiculo(ByteBuffer mapa, int posicao, List<String> tipos) {
+        LocalDateTime entrada = deMillis(mapa.getLong(posicao));
+        LocalDateTime saida = deMillis(mapa.getLong(posicao + 8));
+        double valor = mapa.getDouble(posicao + 16);
+        String tipo = tipos.get(mapa.getShort(posicao + 24));
+        byte[] bytesPlaca = new byte[mapa.get(posicao + 26)];
+        for (int i = 0; i < bytesPlaca.length; i++) {
+            bytesPlaca[i] = mapa.get(posicao + 27 + i);
+        }
+
+        Veiculo veiculo = new Veiculo(new String(bytesPlaca, StandardCharsets.UTF_8), tipo, entrada);
+        if (saida != null) {
+            veiculo.setDataSaida(saida);
+            veiculo.setValorCobrado(valor);
+        }
+        return veiculo;
+    }
+
+    private static long paraMillis(LocalDateTime data) {
+        if (data == null) {
+            return SEM_DATA;
+        }
+        return data.toEpochSecond(ZoneOffset.UTC) * 1000 + data.getNano() / 1_000_000;
+    }
+
+    private static LocalDateTime deMillis(long millis) {
+        if (millis == SEM_DATA) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static void garantirEspaco(WritableByteChannel canal, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            descarregar(canal, buffer);
+        }
+    }
+
+    private static void descarregar(WritableByteChannel canal, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Histórico de saídas lido do arquivo mapeado: cada Veiculo é criado apenas quando acessado
+    private static class HistoricoMapeado extends AbstractList<Veiculo> {
+        private final ByteBuffer mapa;
+        private final int inicio;
+        private final int tamanho;
+        private final List<String> tipos;
+
+        HistoricoMapeado(ByteBuffer mapa, int inicio, int tamanho, List<String> tipos) {
+            this.mapa = mapa;
+            this.inicio = inicio;
+            this.tamanho = tamanho;
+            this.tipos = tipos;
+        }
+
+        @Override
+        public Veiculo get(int indice) {
+            if (indice < 0 || indice >= tamanho) {
+                throw new IndexOutOfBoundsException("Índice: " + indice + ", tamanho: " + tamanho);
+            }
+            return lerVeiculo(mapa, inicio + indice * TAMANHO_REGISTRO, tipos);
+        }
+
+        @Override
+        public int size() {
+            return tamanho;
+        }
+
+        // Bytes brutos dos registros, para cópia direta ao salvar
+        ByteBuffer bytes() {
+            ByteBuffer copia = mapa.duplicate();
+            copia.position(inicio);
+            copia.limit(inicio + tamanho * TAMANHO_REGISTRO);
+            return copia;
+        }
+    }
+}
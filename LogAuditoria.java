@@ -0,0 +1,62 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * Log de auditoria das transações do estacionamento.
+ * Cada transação gera uma linha estruturada (campos separados por ';'),
+ * gravada em arquivo de forma assíncrona através de uma SaidaAssincrona.
+ * Formato: momento;operacao;placa;tipo;valor
+ * Nos campos de texto, '%', ';' e quebras de linha são gravados como %25, %3B, %0D e %0A.
+ */
+public class LogAuditoria {
+    private final OutputStreamWriter arquivo;
+    private final SaidaAssincrona saida;
+
+    /**
+     * Abre (ou cria) o arquivo de auditoria, acrescentando ao final.
+     * @param caminhoArquivo Caminho do arquivo de auditoria
+     * @throws IOException se o arquivo não puder ser aberto
+     */
+    public LogAuditoria(String caminhoArquivo) throws IOException {
+        this.arquivo = new OutputStreamWriter(
+                new FileOutputStream(caminhoArquivo, true), StandardCharsets.UTF_8);
+        this.saida = new SaidaAssincrona(arquivo, "auditoria");
+    }
+
+    /**
+     * Registra uma transação.
+     * @param operacao Nome da operação
+     * @param placa Placa do veículo
+     * @param tipo Tipo do veículo
+     * @param momento Data e hora da operação
+     * @param valor Valor cobrado na operação
+     */
+    public void registrar(String operacao, String placa, String tipo, LocalDateTime momento, double valor) {
+        saida.println(momento + ";" + campo(operacao) + ";" + campo(placa) + ";" + campo(tipo) + ";"
+                + String.format(Locale.ROOT, "%.2f", valor));
+    }
+
+    // Impede que um campo de texto crie campos ou linhas a mais
+    private static String campo(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        return texto.replace("%", "%25").replace(";", "%3B").replace("\r", "%0D").replace("\n", "%0A");
+    }
+
+    /**
+     * Grava as transações pendentes e fecha o arquivo.
+     */
+    public void fechar() {
+        saida.close();
+        try {
+            arquivo.close();
+        } catch (IOException e) {
+            // Nada a fazer: as transações já foram gravadas
+        }
+    }
+}
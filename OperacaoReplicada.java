@@ -0,0 +1,193 @@
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Operação do estacionamento enviada do nó primário aos seguidores.
+ * Cada operação recebe um número de sequência crescente no primário; os seguidores
+ * aplicam as operações exatamente uma vez e na mesma ordem, com o relógio do estacionamento
+ * parado no momento em que o primário a registrou (a tarifa dinâmica depende desse relógio).
+ * Formato da linha: seq;enviadoEm;operacao;placa;tipo;momento;valor;fim;agora;registradaEm
+ * (placa e tipo codificados como em URLEncoder, para que ';' e quebras de linha não alterem os campos)
+ */
+public class OperacaoReplicada {
+    public static final String ENTRADA = "ENTRADA";
+    public static final String SAIDA = "SAIDA";
+    public static final String RESERVA = "RESERVA";
+    public static final String CANCELAMENTO = "CANCELAMENTO";
+    public static final String TARIFA = "TARIFA"; // Valor 1 ativa a tarifa dinâmica, 0 desativa
+
+    private static final String VAZIO = "-";
+
+    private long sequencia;
+    private long enviadoEm; // Momento do envio no primário (ms desde a época)
+    private String operacao;
+    private String placa;
+    private String tipo;
+    private LocalDateTime momento; // Entrada, saída ou início da reserva
+    private double valor;          // Valor cobrado na saída
+    private LocalDateTime fim;     // Fim da reserva
+    private LocalDateTime agora;   // Momento em que a reserva foi feita
+    private LocalDateTime registradaEm; // Relógio do primário ao executar a operação
+
+    private OperacaoReplicada(String operacao, String placa, String tipo, LocalDateTime momento,
+                              double valor, LocalDateTime fim, LocalDateTime agora) {
+        this.operacao = operacao;
+        this.placa = placa;
+        this.tipo = tipo;
+        this.momento = momento;
+        this.valor = valor;
+        this.fim = fim;
+        this.agora = agora;
+    }
+
+    public static OperacaoReplicada entrada(String placa, String tipo, LocalDateTime dataEntrada) {
+        return new OperacaoReplicada(ENTRADA, placa, tipo, dataEntrada, 0.0, null, null);
+    }
+
+    public static OperacaoReplicada saida(String placa, String tipo, LocalDateTime dataSaida, double valor) {
+        return new OperacaoReplicada(SAIDA, placa, tipo, dataSaida, valor, null, null);
+    }
+
+    public static OperacaoReplicada reserva(String placa, String tipo, LocalDateTime inicio,
+                                            LocalDateTime fim, LocalDateTime agora) {
+        return new OperacaoReplicada(RESERVA, placa, tipo, inicio, 0.0, fim, agora);
+    }
+
+    public static OperacaoReplicada cancelamento(String placa, String tipo) {
+        return new OperacaoReplicada(CANCELAMENTO, placa, tipo, null, 0.0, null, null);
+    }
+
+    public static OperacaoReplicada tarifa(boolean ativa) {
+        return new OperacaoReplicada(TARIFA, VAZIO, VAZIO, null, ativa ? 1.0 : 0.0, null, null);
+    }
+
+    /**
+     * Aplica a operação a um estacionamento seguidor, com o relógio dele parado no momento
+     * em que a operação foi registrada no primário.
+     * @param estacionamento Estacionamento do nó seguidor
+     * @return true se a operação teve efeito, false se foi recusada (estado divergente)
+     */
+    public boolean aplicarEm(Estacionamento estacionamento) {
+        if (registradaEm == null) {
+            return aplicar(estacionamento);
+        }
+        ZoneId zona = ZoneId.systemDefault();
+        estacionamento.setRelogio(Clock.fixed(registradaEm.atZone(zona).toInstant(), zona));
+        try {
+            return aplicar(estacionamento);
+        } finally {
+            estacionamento.setRelogio(Clock.systemDefaultZone());
+        }
+    }
+
+    private boolean aplicar(Estacionamento estacionamento) {
+        switch (operacao) {
+            case ENTRADA:
+                return estacionamento.registrarEntrada(placa, tipo, momento);
+            case SAIDA:
+                return estacionamento.aplicarSaida(placa, momento, valor) >= 0;
+            case RESERVA:
+                return estacionamento.reservar(placa, tipo, momento, fim, agora);
+            case CANCELAMENTO:
+                return estacionamento.cancelarReserva(placa);
+            case TARIFA:
+                if (valor != 0.0) {
+                    estacionamento.ativarTarifaDinamica();
+                } else {
+                    estacionamento.desativarTarifaDinamica();
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converte a operação em uma linha de texto para envio.
+     * @return Linha sem quebra de linha
+     */
+    public String paraLinha() {
+        return sequencia + ";" + enviadoEm + ";" + operacao + ";" + codificar(placa) + ";" + codificar(tipo) + ";"
+                + texto(momento) + ";" + Double.toString(valor) + ";"
+                + texto(fim) + ";" + texto(agora) + ";" + texto(registradaEm);
+    }
+
+    /**
+     * Reconstrói uma operação a partir da linha recebida.
+     * @param linha Linha no formato de paraLinha()
+     * @return Operação correspondente
+     * @throws IllegalArgumentException se a linha estiver mal formada
+     */
+    public static OperacaoReplicada deLinha(String linha) {
+        String[] campos = linha.split(";", -1);
+        if (campos.length != 10) {
+            throw new IllegalArgumentException("Operação mal formada: " + linha);
+        }
+        try {
+            OperacaoReplicada op = new OperacaoReplicada(campos[2], decodificar(campos[3]), decodificar(campos[4]),
+                    data(campos[5]), Double.parseDouble(campos[6]), data(campos[7]), data(campos[8]));
+            op.sequencia = Long.parseLong(campos[0]);
+            op.enviadoEm = Long.parseLong(campos[1]);
+            op.registradaEm = data(campos[9]);
+            return op;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Operação mal formada: " + linha, e);
+        }
+    }
+
+    public long getSequencia() {
+        return sequencia;
+    }
+
+    void setSequencia(long sequencia) {
+        this.sequencia = sequencia;
+    }
+
+    public long getEnviadoEm() {
+        return enviadoEm;
+    }
+
+    void setEnviadoEm(long enviadoEm) {
+        this.enviadoEm = enviadoEm;
+    }
+
+    public LocalDateTime getRegistradaEm() {
+        return registradaEm;
+    }
+
+    void setRegistradaEm(LocalDateTime registradaEm) {
+        this.registradaEm = registradaEm;
+    }
+
+    public String getOperacao() {
+        return operacao;
+    }
+
+    public String getPlaca() {
+        return placa;
+    }
+
+    public double getValor() {
+        return valor;
+    }
+
+    private static String codificar(String texto) {
+        return URLEncoder.encode(texto, StandardCharsets.UTF_8);
+    }
+
+    private static String decodificar(String texto) {
+        return URLDecoder.decode(texto, StandardCharsets.UTF_8);
+    }
+
+    private static String texto(LocalDateTime data) {
+        return (data != null) ? data.toString() : VAZIO;
+    }
+
+    private static LocalDateTime data(String texto) {
+        return VAZIO.equals(texto) ? null : LocalDateTime.parse(texto);
+    }
+}
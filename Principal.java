@@ -1,3 +1,9 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.time.LocalDateTime;
 import java.time.LocalDate;
@@ -11,46 +17,142 @@ import java.time.format.DateTimeParseException;
 public class Principal {
     private static Estacionamento estacionamento;
     private static Scanner scanner;
+    private static SaidaAssincrona saida;
+    private static LogAuditoria auditoria;
+    private static ReplicacaoPrimaria replicacaoPrimaria; // Ativa com --primario <porta>
+    private static ReplicacaoSeguidora replicacaoSeguidora; // Ativa com --seguidor <host:porta>
+    private static DiarioOperacoes diario; // Operações feitas depois da imagem de estado (não usado pelo seguidor)
+    private static long imagemAtual;       // Identificador da última imagem carregada ou salva (0 se nenhuma)
+    private static final String ARQUIVO_AUDITORIA = "auditoria.log";
+    private static final Path ARQUIVO_ESTADO = Paths.get("estado.img");
+    private static final Path ARQUIVO_DIARIO = Paths.get("estado.diario");
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
     
     /**
      * Método principal que inicia o sistema.
+     * Argumentos opcionais de replicação:
+     *   --primario <porta>        envia as operações aos seguidores conectados nesta porta
+     *   --seguidor <host:porta>   mantém uma cópia do estacionamento do primário informado
      * @param args Argumentos da linha de comando
      */
     public static void main(String[] args) {
         scanner = new Scanner(System.in);
-        estacionamento = new Estacionamento(20); // Capacidade de 20 vagas
+        saida = SaidaAssincrona.console();
         
-        System.out.println("========================================");
-        System.out.println("   SISTEMA DE ESTACIONAMENTO");
-        System.out.println("========================================\n");
+        // Seguidores não usam a imagem local: o estado vem todo do primário
+        boolean seguidor = Arrays.asList(args).contains("--seguidor");
+        long inicioCarga = System.nanoTime();
+        estacionamento = seguidor ? null : carregarEstado();
+        if (estacionamento == null) {
+            estacionamento = new Estacionamento(20); // Capacidade de 20 vagas
+        }
+        long recuperadas = seguidor ? 0 : reaplicarDiario();
+        long tempoCarga = (System.nanoTime() - inicioCarga) / 1_000_000;
+        estacionamento.setSaida(saida);
+        if (!seguidor) {
+            // Operações reaplicadas só estão no diário: uma nova imagem as inclui antes de recomeçá-lo
+            if (recuperadas > 0) {
+                salvarEstado();
+            }
+            abrirDiario();
+        }
+        
+        saida.println("========================================");
+        saida.println("   SISTEMA DE ESTACIONAMENTO");
+        saida.println("========================================\n");
+        
+        iniciarReplicacao(args);
+        // Seguidores não auditam: as transações replicadas já foram registradas pelo primário
+        if (replicacaoSeguidora == null) {
+            abrirAuditoria();
+        }
+        saida.println("Pronto em " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms"
+                + " (carregamento do estado: " + tempoCarga + " ms)");
         
         int opcao;
         do {
             exibirMenu();
             opcao = lerOpcao();
             processarOpcao(opcao);
+            verificarDiario();
         } while (opcao != 0);
         
-        System.out.println("\nSistema encerrado. Obrigado!");
+        // Um seguidor não grava: a imagem do diretório pertence ao primário (um nó promovido grava)
+        if (replicacaoSeguidora == null) {
+            salvarEstado();
+        }
+        saida.println("\nSistema encerrado. Obrigado!");
         scanner.close();
+        if (replicacaoSeguidora != null) {
+            replicacaoSeguidora.parar();
+        }
+        if (replicacaoPrimaria != null) {
+            replicacaoPrimaria.fechar();
+        }
+        if (diario != null) {
+            diario.fechar();
+        }
+        if (auditoria != null) {
+            auditoria.fechar();
+        }
+        saida.close();
     }
     
     /**
      * Exibe o menu principal com todas as opções disponíveis.
      */
     private static void exibirMenu() {
-        System.out.println("\n=== MENU PRINCIPAL ===");
-        System.out.println("1. Registrar entrada de veículo");
-        System.out.println("2. Registrar saída de veículo");
-        System.out.println("3. Pesquisar veículo por placa");
-        System.out.println("4. Mostrar vagas disponíveis");
-        System.out.println("5. Mostrar todos os veículos presentes");
-        System.out.println("6. Relatório de faturamento");
-        System.out.println("7. Total arrecadado por dia");
-        System.out.println("8. Mostrar fila de espera");
-        System.out.println("0. Sair");
-        System.out.print("\nEscolha uma opção: ");
+        saida.println("\n=== MENU PRINCIPAL ===");
+        saida.println("1. Registrar entrada de veículo");
+        saida.println("2. Registrar saída de veículo");
+        saida.println("3. Pesquisar veículo por placa");
+        saida.println("4. Mostrar vagas disponíveis");
+        saida.println("5. Mostrar todos os veículos presentes");
+        saida.println("6. Relatório de faturamento");
+        saida.println("7. Total arrecadado por dia");
+        saida.println("8. Mostrar fila de espera");
+        saida.println("9. Ativar/desativar tarifa dinâmica");
+        saida.println("10. Reservar vaga");
+        saida.println("11. Mostrar reservas");
+        saida.println("12. Cancelar reserva");
+        if (replicacaoPrimaria != null || replicacaoSeguidora != null) {
+            saida.println("13. Situação da replicação");
+        }
+        if (replicacaoSeguidora != null) {
+            saida.println("14. Promover este nó a primário");
+        }
+        saida.println("0. Sair");
+        saida.print("\nEscolha uma opção: ");
+    }
+    
+    /**
+     * Lê uma linha digitada pelo usuário.
+     * Antes da leitura, aguarda a saída pendente ser exibida para que o prompt apareça.
+     * @return Linha digitada
+     */
+    private static String lerLinha() {
+        saida.flush();
+        return scanner.nextLine();
+    }
+    
+    /**
+     * Lê o tipo do veículo através de um menu numerado.
+     * @return "Carro" ou "Moto" (Carro se a opção for inválida)
+     */
+    private static String lerTipoVeiculo() {
+        saida.println("\nTipo do veículo:");
+        saida.println("1. Carro");
+        saida.println("2. Moto");
+        saida.print("Escolha uma opção (1 ou 2): ");
+        String opcaoTipo = lerLinha().trim();
+        
+        if (opcaoTipo.equals("1")) {
+            return "Carro";
+        } else if (opcaoTipo.equals("2")) {
+            return "Moto";
+        }
+        saida.println("Opção inválida! Será usado 'Carro' como padrão.");
+        return "Carro";
     }
     
     /**
@@ -59,7 +161,7 @@ public class Principal {
      */
     private static int lerOpcao() {
         try {
-            return Integer.parseInt(scanner.nextLine());
+            return Integer.parseInt(lerLinha());
         } catch (NumberFormatException e) {
             return -1;
         }
@@ -70,6 +172,10 @@ public class Principal {
      * @param opcao Opção selecionada no menu
      */
     private static void processarOpcao(int opcao) {
+        if (replicacaoSeguidora != null) {
+            processarOpcaoSeguidor(opcao);
+            return;
+        }
         switch (opcao) {
             case 1:
                 registrarEntrada();
@@ -95,10 +201,274 @@ public class Principal {
             case 8:
                 mostrarFilaEspera();
                 break;
+            case 9:
+                alternarTarifaDinamica();
+                break;
+            case 10:
+                reservarVaga();
+                break;
+            case 11:
+                mostrarReservas();
+                break;
+            case 12:
+                cancelarReserva();
+                break;
+            case 13:
+                mostrarReplicacao();
+                break;
             case 0:
                 break;
             default:
-                System.out.println("\nOpção inválida! Tente novamente.");
+                saida.println("\nOpção inválida! Tente novamente.");
+        }
+    }
+    
+    /**
+     * Processa a opção escolhida em um nó seguidor.
+     * Operações que alteram o estacionamento só são aceitas no primário. Todo acesso ao
+     * estacionamento passa pela trava do seguidor (acessar()), sem concorrer com a
+     * aplicação das operações replicadas; a entrada do usuário é lida fora da trava.
+     * @param opcao Opção selecionada no menu
+     */
+    private static void processarOpcaoSeguidor(int opcao) {
+        switch (opcao) {
+            case 1:
+            case 2:
+            case 9:
+            case 10:
+            case 12:
+                saida.println("\n✗ Nó seguidor: esta operação só pode ser feita no primário.");
+                saida.println("Use a opção 14 para promover este nó se o primário estiver fora do ar.");
+                break;
+            case 3:
+                pesquisarVeiculo();
+                break;
+            case 7:
+                mostrarTotalArrecadadoPorDia();
+                break;
+            case 14:
+                promoverAPrimario();
+                break;
+            case 0:
+                break;
+            default:
+                // Opções sem leitura de entrada: executam inteiras dentro da trava
+                acessar(() -> {
+                    switch (opcao) {
+                        case 4: mostrarVagas(); break;
+                        case 5: mostrarTodosVeiculos(); break;
+                        case 6: estacionamento.gerarRelatorioFaturamento(); break;
+                        case 8: mostrarFilaEspera(); break;
+                        case 11: mostrarReservas(); break;
+                        case 13: mostrarReplicacao(); break;
+                        default: saida.println("\nOpção inválida! Tente novamente.");
+                    }
+                });
+        }
+    }
+    
+    /**
+     * Executa um acesso ao estacionamento. No nó seguidor, usa a trava da replicação
+     * para não concorrer com a aplicação das operações recebidas do primário.
+     * @param acesso Código que acessa o estacionamento (sem ler a entrada do usuário)
+     */
+    private static void acessar(Runnable acesso) {
+        if (replicacaoSeguidora != null) {
+            replicacaoSeguidora.consultar(acesso);
+        } else {
+            acesso.run();
+        }
+    }
+    
+    /**
+     * Abre o log de auditoria e o associa ao estacionamento.
+     */
+    private static void abrirAuditoria() {
+        try {
+            auditoria = new LogAuditoria(ARQUIVO_AUDITORIA);
+            estacionamento.setLogAuditoria(auditoria);
+        } catch (IOException e) {
+            saida.println("Aviso: não foi possível abrir o log de auditoria (" + e.getMessage() + ")");
+        }
+    }
+    
+    /**
+     * Carrega o estado salvo na última execução, se existir.
+     * @return Estacionamento restaurado ou null se não houver estado salvo
+     */
+    private static Estacionamento carregarEstado() {
+        if (!Files.exists(ARQUIVO_ESTADO) && !Files.exists(Paths.get(ARQUIVO_ESTADO + ".novo"))) {
+            return null;
+        }
+        try {
+            Estacionamento carregado = ImagemEstado.carregar(ARQUIVO_ESTADO);
+            imagemAtual = ImagemEstado.getIdentificador(ARQUIVO_ESTADO);
+            saida.println("Estado restaurado: " + carregado.getVagasOcupadas() + " veículo(s) estacionado(s), "
+                    + carregado.getTamanhoFilaEspera() + " na fila");
+            return carregado;
+        } catch (IOException e) {
+            saida.println("Aviso: não foi possível restaurar o estado (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+    
+    /**
+     * Reaplica as operações que a execução anterior gravou no diário depois da imagem
+     * restaurada (se ela não terminou pela opção 0, por queda ou encerramento forçado).
+     * @return Quantidade de operações reaplicadas
+     */
+    private static long reaplicarDiario() {
+        try {
+            long recuperadas = DiarioOperacoes.reaplicar(ARQUIVO_DIARIO, imagemAtual, estacionamento);
+            if (recuperadas > 0) {
+                saida.println("Operações recuperadas do diário: " + recuperadas
+                        + " (a execução anterior não foi encerrada pela opção 0)");
+            }
+            return recuperadas;
+        } catch (IOException e) {
+            saida.println("Aviso: diário de operações ignorado (" + e.getMessage() + ")");
+            return 0;
+        }
+    }
+    
+    /**
+     * Abre o diário de operações, a partir da última imagem carregada ou salva (ou do estado
+     * vazio), e o associa ao estacionamento.
+     */
+    private static void abrirDiario() {
+        try {
+            DiarioOperacoes novo = new DiarioOperacoes(ARQUIVO_DIARIO, ARQUIVO_ESTADO);
+            novo.iniciar(imagemAtual);
+            diario = novo;
+            estacionamento.setDiario(diario);
+        } catch (IOException e) {
+            saida.println("Aviso: não foi possível abrir o diário de operações (" + e.getMessage() + ")");
+        }
+    }
+    
+    /**
+     * Avisa, uma vez, se o diário de operações deixou de ser gravado.
+     */
+    private static void verificarDiario() {
+        if (diario != null && diario.getUltimoErro() != null) {
+            saida.println("Aviso: falha ao gravar o diário de operações (" + diario.getUltimoErro().getMessage()
+                    + "). As próximas operações só serão preservadas ao sair pela opção 0.");
+            estacionamento.setDiario(null);
+            if (replicacaoPrimaria != null) {
+                replicacaoPrimaria.setDiario(null);
+            }
+            diario.fechar();
+            diario = null;
+        }
+    }
+    
+    /**
+     * Salva o estado atual para a próxima execução (e recomeça o diário a partir dele).
+     */
+    private static void salvarEstado() {
+        try {
+            long inicio = System.nanoTime();
+            if (diario != null) {
+                diario.salvarImagem(estacionamento);
+            } else {
+                imagemAtual = ImagemEstado.salvar(estacionamento, ARQUIVO_ESTADO);
+            }
+            saida.println("Estado salvo em " + (System.nanoTime() - inicio) / 1_000_000 + " ms.");
+        } catch (IOException e) {
+            saida.println("Aviso: não foi possível salvar o estado (" + e.getMessage() + ")");
+        }
+    }
+    
+    /**
+     * Inicia a replicação conforme os argumentos da linha de comando.
+     * @param args Argumentos da linha de comando
+     */
+    private static void iniciarReplicacao(String[] args) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            try {
+                if (args[i].equals("--primario")) {
+                    replicacaoPrimaria = new ReplicacaoPrimaria(Integer.parseInt(args[i + 1]), estacionamento);
+                    estacionamento.setReplicacao(replicacaoPrimaria);
+                    registrarHistorico();
+                    saida.println("Replicação: nó primário na porta " + replicacaoPrimaria.getPorta());
+                } else if (args[i].equals("--seguidor")) {
+                    String[] endereco = args[i + 1].split(":");
+                    replicacaoSeguidora = new ReplicacaoSeguidora(estacionamento, endereco[0], Integer.parseInt(endereco[1]));
+                    saida.println("Replicação: nó seguidor de " + args[i + 1]);
+                }
+            } catch (IOException | RuntimeException e) {
+                saida.println("Aviso: não foi possível iniciar a replicação (" + e.getMessage() + ")");
+            }
+        }
+    }
+    
+    /**
+     * Marca no diário o início do histórico do primário e informa o diário aos seguidores,
+     * que o usam para recuperar as operações que não receberam se este nó cair.
+     */
+    private static void registrarHistorico() {
+        if (diario != null) {
+            diario.iniciarHistorico(replicacaoPrimaria.getHistorico(), replicacaoPrimaria.getUltimaSequencia());
+            replicacaoPrimaria.setDiario(diario);
+        }
+    }
+    
+    /**
+     * Mostra a situação da replicação deste nó.
+     */
+    private static void mostrarReplicacao() {
+        saida.println("\n=== SITUAÇÃO DA REPLICAÇÃO ===");
+        if (replicacaoSeguidora != null) {
+            saida.println("Papel: seguidor");
+            saida.println("Conectado ao primário: " + (replicacaoSeguidora.isConectada() ? "sim" : "não"));
+            saida.println("Última operação aplicada: " + replicacaoSeguidora.getUltimaSequenciaAplicada());
+            saida.println("Atraso da última operação: " + replicacaoSeguidora.getAtrasoMs() + " ms");
+            saida.println("Operações recusadas (divergência): " + replicacaoSeguidora.getDivergencias());
+        } else if (replicacaoPrimaria != null) {
+            saida.println("Papel: primário (porta " + replicacaoPrimaria.getPorta() + ")");
+            saida.println("Seguidores conectados: " + replicacaoPrimaria.getQuantidadeSeguidores()
+                    + " (desconectados: " + replicacaoPrimaria.getQuantidadeSeguidoresDesconectados() + ")");
+            saida.println("Última operação publicada: " + replicacaoPrimaria.getUltimaSequencia());
+            saida.println("Atraso do seguidor mais lento: " + replicacaoPrimaria.getAtrasoOperacoes()
+                    + " operação(ões) / " + replicacaoPrimaria.getAtrasoMs() + " ms");
+        } else {
+            saida.println("Replicação desativada.");
+        }
+        saida.println("==============================\n");
+    }
+    
+    /**
+     * Promove este nó seguidor a primário, após falha do primário.
+     * Antes, aplica as operações que estão no diário do primário e não chegaram a este nó.
+     */
+    private static void promoverAPrimario() {
+        saida.println("\n=== PROMOVER A PRIMÁRIO ===");
+        saida.print("Porta para os demais seguidores se conectarem: ");
+        try {
+            int porta = Integer.parseInt(lerLinha().trim());
+            try {
+                long recuperadas = replicacaoSeguidora.recuperarDoDiario();
+                saida.println("Operações recuperadas do diário do primário: " + recuperadas);
+            } catch (IOException e) {
+                saida.println("\n✗ " + e.getMessage());
+                saida.print("Promover mesmo assim, sem as operações que o primário concluiu e este nó não recebeu? (s/n): ");
+                if (!lerLinha().trim().equalsIgnoreCase("s")) {
+                    saida.println("Promoção cancelada. Este nó parou de seguir o primário; use a opção 14 para tentar de novo.");
+                    return;
+                }
+            }
+            replicacaoPrimaria = replicacaoSeguidora.promover(porta);
+            replicacaoSeguidora = null;
+            salvarEstado();     // Como primário, este nó passa a gravar o estado,
+            abrirDiario();      // o diário das operações a partir dele
+            registrarHistorico();
+            abrirAuditoria();   // e a registrar as transações
+            saida.println("\n✓ Este nó agora é o primário (porta " + replicacaoPrimaria.getPorta() + ").");
+            saida.println("Última operação: " + replicacaoPrimaria.getUltimaSequencia());
+        } catch (NumberFormatException e) {
+            saida.println("Erro: Porta inválida!");
+        } catch (IOException e) {
+            saida.println("\n✗ Erro: não foi possível abrir a porta (" + e.getMessage() + ")");
         }
     }
     
@@ -107,54 +477,45 @@ public class Principal {
      * Permite escolher entre usar a hora atual ou informar manualmente.
      */
     private static void registrarEntrada() {
-        System.out.println("\n=== REGISTRAR ENTRADA ===");
+        saida.println("\n=== REGISTRAR ENTRADA ===");
         
-        System.out.print("Placa do veículo: ");
-        String placa = scanner.nextLine().trim();
+        saida.print("Placa do veículo: ");
+        String placa = lerLinha().trim();
         
         if (placa.isEmpty()) {
-            System.out.println("Erro: Placa não pode estar vazia!");
+            saida.println("Erro: Placa não pode estar vazia!");
+            return;
+        }
+        if (!Estacionamento.isPlacaValida(placa)) {
+            saida.println("Erro: Placa muito longa ou com caracteres inválidos (;)!");
             return;
         }
         
         // Menu de seleção de tipo de veículo
-        System.out.println("\nTipo do veículo:");
-        System.out.println("1. Carro");
-        System.out.println("2. Moto");
-        System.out.print("Escolha uma opção (1 ou 2): ");
-        String opcaoTipo = scanner.nextLine().trim();
-        
-        String tipo;
-        if (opcaoTipo.equals("1")) {
-            tipo = "Carro";
-        } else if (opcaoTipo.equals("2")) {
-            tipo = "Moto";
-        } else {
-            System.out.println("Opção inválida! Será usado 'Carro' como padrão.");
-            tipo = "Carro";
-        }
+        String tipo = lerTipoVeiculo();
         
         // Pergunta se deseja informar hora de entrada manualmente
-        System.out.print("Deseja informar a hora de entrada manualmente? (S/N): ");
-        String resposta = scanner.nextLine().trim();
+        saida.print("Deseja informar a hora de entrada manualmente? (S/N): ");
+        String resposta = lerLinha().trim();
         
         LocalDateTime dataEntrada = null;
         boolean usarHoraManual = resposta.equalsIgnoreCase("S");
         
         if (usarHoraManual) {
-            System.out.print("Informe a data e hora de entrada (dd/MM/yyyy HH:mm): ");
-            String dataHoraStr = scanner.nextLine().trim();
+            saida.print("Informe a data e hora de entrada (dd/MM/yyyy HH:mm): ");
+            String dataHoraStr = lerLinha().trim();
             
             try {
                 dataEntrada = LocalDateTime.parse(dataHoraStr, formatter);
             } catch (DateTimeParseException e) {
-                System.out.println("Erro: Formato de data inválido! Use: dd/MM/yyyy HH:mm");
-                System.out.println("Exemplo: 25/12/2024 14:30");
+                saida.println("Erro: Formato de data inválido! Use: dd/MM/yyyy HH:mm");
+                saida.println("Exemplo: 25/12/2024 14:30");
                 return;
             }
         }
         
         // Tenta registrar a entrada
+        boolean tinhaReserva = estacionamento.buscarReserva(placa) != null;
         boolean sucesso;
         if (usarHoraManual && dataEntrada != null) {
             sucesso = estacionamento.registrarEntrada(placa, tipo, dataEntrada);
@@ -165,7 +526,9 @@ public class Principal {
         if (sucesso) {
             // Verifica se o veículo foi para a fila de espera (verifica após o registro)
             boolean estaNaFila = false;
+            int posicao = 0;
             for (Veiculo v : estacionamento.getFilaEspera()) {
+                posicao++;
                 if (v.getPlaca().equalsIgnoreCase(placa)) {
                     estaNaFila = true;
                     break;
@@ -173,21 +536,28 @@ public class Principal {
             }
             
             if (estaNaFila) {
-                System.out.println("\n✓ Veículo adicionado à fila de espera!");
-                System.out.println("Posição na fila: " + estacionamento.getTamanhoFilaEspera());
+                saida.println("\n✓ Veículo adicionado à fila de espera!");
+                saida.println("Posição na fila: " + posicao);
+                saida.println("Espera estimada: " + formatarEspera(estacionamento.estimarEsperaMinutos(posicao)));
                 if (usarHoraManual && dataEntrada != null) {
-                    System.out.println("Hora de entrada: " + dataEntrada.format(formatter));
+                    saida.println("Hora de entrada: " + dataEntrada.format(formatter));
                 }
             } else {
-                System.out.println("\n✓ Veículo registrado com sucesso!");
+                saida.println("\n✓ Veículo registrado com sucesso!");
+                Reserva pendente = estacionamento.buscarReserva(placa);
+                if (tinhaReserva && pendente == null) {
+                    saida.println("Reserva utilizada.");
+                } else if (pendente != null) {
+                    saida.println("Reserva de " + pendente.getInicio().format(formatter) + " continua pendente.");
+                }
                 if (usarHoraManual && dataEntrada != null) {
-                    System.out.println("Hora de entrada: " + dataEntrada.format(formatter));
+                    saida.println("Hora de entrada: " + dataEntrada.format(formatter));
                 }
-                System.out.println("Vagas disponíveis: " + estacionamento.getVagasDisponiveis());
+                saida.println("Vagas disponíveis: " + estacionamento.getVagasDisponiveis());
             }
         } else {
             if (estacionamento.buscarVeiculoEstacionado(placa) != null) {
-                System.out.println("\n✗ Erro: Veículo com esta placa já está estacionado!");
+                saida.println("\n✗ Erro: Veículo com esta placa já está estacionado!");
             } else {
                 // Verifica se está na fila
                 boolean naFila = false;
@@ -198,25 +568,25 @@ public class Principal {
                     }
                 }
                 if (naFila) {
-                    System.out.println("\n✗ Erro: Veículo já está na fila de espera!");
+                    saida.println("\n✗ Erro: Veículo já está na fila de espera!");
                 } else {
-                    System.out.println("\n✗ Erro: Não foi possível registrar a entrada!");
+                    saida.println("\n✗ Erro: Não foi possível registrar a entrada!");
                 }
             }
         }
     }
     
     private static void registrarSaida() {
-        System.out.println("\n=== REGISTRAR SAÍDA ===");
+        saida.println("\n=== REGISTRAR SAÍDA ===");
         
         // Mostra lista de veículos estacionados
         exibirListaVeiculosEstacionados();
         
-        System.out.print("Placa do veículo: ");
-        String placa = scanner.nextLine().trim();
+        saida.print("Placa do veículo: ");
+        String placa = lerLinha().trim();
         
         if (placa.isEmpty()) {
-            System.out.println("Erro: Placa não pode estar vazia!");
+            saida.println("Erro: Placa não pode estar vazia!");
             return;
         }
         
@@ -234,21 +604,21 @@ public class Principal {
                 }
             }
             
-            System.out.println("\n✓ Saída registrada com sucesso!");
+            saida.println("\n✓ Saída registrada com sucesso!");
             if (veiculo != null) {
-                System.out.println("Tempo de permanência: " + veiculo.getTempoPermanenciaFormatado());
-                System.out.println("Horas cobradas: " + veiculo.calcularTempoPermanencia() + " hora(s)");
+                saida.println("Tempo de permanência: " + veiculo.getTempoPermanenciaFormatado());
+                saida.println("Horas cobradas: " + veiculo.calcularTempoPermanencia() + " hora(s)");
             }
-            System.out.println("Valor a pagar: R$ " + String.format("%.2f", valor));
-            System.out.println("Vagas disponíveis: " + estacionamento.getVagasDisponiveis());
+            saida.println("Valor a pagar: R$ " + String.format("%.2f", valor));
+            saida.println("Vagas disponíveis: " + estacionamento.getVagasDisponiveis());
             
             // Informa se um veículo da fila entrou automaticamente
             if (estacionamento.getTamanhoFilaEspera() > 0) {
-                System.out.println("ℹ Um veículo da fila de espera entrou automaticamente!");
-                System.out.println("Veículos restantes na fila: " + estacionamento.getTamanhoFilaEspera());
+                saida.println("ℹ Um veículo da fila de espera entrou automaticamente!");
+                saida.println("Veículos restantes na fila: " + estacionamento.getTamanhoFilaEspera());
             }
         } else {
-            System.out.println("\n✗ Erro: Veículo não encontrado ou já foi retirado!");
+            saida.println("\n✗ Erro: Veículo não encontrado ou já foi retirado!");
         }
     }
     
@@ -256,19 +626,27 @@ public class Principal {
      * Pesquisa um veículo pela placa e mostra informações se estiver estacionado.
      */
     private static void pesquisarVeiculo() {
-        System.out.println("\n=== PESQUISAR VEÍCULO POR PLACA ===");
+        saida.println("\n=== PESQUISAR VEÍCULO POR PLACA ===");
         
         // Mostra lista de veículos estacionados
-        exibirListaVeiculosEstacionados();
+        acessar(Principal::exibirListaVeiculosEstacionados);
         
-        System.out.print("Placa do veículo: ");
-        String placa = scanner.nextLine().trim();
+        saida.print("Placa do veículo: ");
+        String placa = lerLinha().trim();
         
         if (placa.isEmpty()) {
-            System.out.println("Erro: Placa não pode estar vazia!");
+            saida.println("Erro: Placa não pode estar vazia!");
             return;
         }
         
+        acessar(() -> exibirVeiculo(placa));
+    }
+    
+    /**
+     * Mostra as informações de um veículo estacionado.
+     * @param placa Placa do veículo
+     */
+    private static void exibirVeiculo(String placa) {
         Veiculo veiculo = estacionamento.buscarVeiculoEstacionado(placa);
         
         if (veiculo != null) {
@@ -280,16 +658,19 @@ public class Principal {
                 tarifaHora = "R$ 12,00 (1ª hora) / R$ 8,00 (hora adicional)";
             }
             
-            System.out.println("\n✓ Veículo encontrado no estacionamento:");
-            System.out.println("Placa: " + veiculo.getPlaca());
-            System.out.println("Tipo: " + veiculo.getTipo());
-            System.out.println("Hora de entrada: " + veiculo.getDataEntrada().format(formatter));
-            System.out.println("Tempo de permanência: " + veiculo.getTempoPermanenciaFormatado());
-            System.out.println("Valor por hora: " + tarifaHora);
-            System.out.println("Valor estimado: R$ " + String.format("%.2f", veiculo.calcularValor()) + 
+            saida.println("\n✓ Veículo encontrado no estacionamento:");
+            saida.println("Placa: " + veiculo.getPlaca());
+            saida.println("Tipo: " + veiculo.getTipo());
+            saida.println("Hora de entrada: " + veiculo.getDataEntrada().format(formatter));
+            saida.println("Tempo de permanência: " + veiculo.getTempoPermanenciaFormatado());
+            saida.println("Valor por hora: " + tarifaHora);
+            if (estacionamento.isTarifaDinamicaAtiva()) {
+                saida.println("Tarifa dinâmica: multiplicador atual x" + String.format("%.2f", estacionamento.getMultiplicadorTarifa()));
+            }
+            saida.println("Valor estimado: R$ " + String.format("%.2f", estacionamento.calcularValor(veiculo)) + 
                              " (cobrado por " + veiculo.calcularTempoPermanencia() + " hora(s))");
         } else {
-            System.out.println("\n✗ Veículo não encontrado ou já foi retirado!");
+            saida.println("\n✗ Veículo não encontrado ou já foi retirado!");
         }
     }
     
@@ -297,35 +678,39 @@ public class Principal {
      * Mostra todos os veículos atualmente estacionados (apenas as placas).
      */
     private static void mostrarTodosVeiculos() {
-        System.out.println("\n=== TODOS OS VEÍCULOS PRESENTES ===");
+        saida.println("\n=== TODOS OS VEÍCULOS PRESENTES ===");
         
         java.util.List<Veiculo> veiculos = estacionamento.getVeiculosEstacionados();
         
         if (veiculos.isEmpty()) {
-            System.out.println("Nenhum veículo estacionado no momento.");
+            saida.println("Nenhum veículo estacionado no momento.");
         } else {
-            System.out.println("Veículos estacionados:");
+            saida.println("Veículos estacionados:");
             int numero = 1;
             for (Veiculo v : veiculos) {
-                System.out.println(numero + ". " + v.getPlaca() + " - Tempo estacionado: " + v.getTempoPermanenciaFormatado());
+                saida.println(numero + ". " + v.getPlaca() + " - Tempo estacionado: " + v.getTempoPermanenciaFormatado());
                 numero++;
             }
         }
-        System.out.println("====================================\n");
+        saida.println("====================================\n");
     }
     
     /**
      * Mostra a quantidade de vagas disponíveis e ocupadas.
      */
     private static void mostrarVagas() {
-        System.out.println("\n=== SITUAÇÃO DAS VAGAS ===");
-        System.out.println("Capacidade total: " + estacionamento.getCapacidadeTotal() + " vagas");
-        System.out.println("Vagas ocupadas: " + estacionamento.getVagasOcupadas());
-        System.out.println("Vagas disponíveis: " + estacionamento.getVagasDisponiveis());
+        saida.println("\n=== SITUAÇÃO DAS VAGAS ===");
+        saida.println("Capacidade total: " + estacionamento.getCapacidadeTotal() + " vagas");
+        saida.println("Vagas ocupadas: " + estacionamento.getVagasOcupadas());
+        saida.println("Vagas reservadas: " + estacionamento.getVagasReservadas());
+        saida.println("Vagas disponíveis: " + estacionamento.getVagasDisponiveis());
         
         double percentualOcupacao = (estacionamento.getVagasOcupadas() * 100.0) / estacionamento.getCapacidadeTotal();
-        System.out.println("Percentual de ocupação: " + String.format("%.1f", percentualOcupacao) + "%");
-        System.out.println("==========================\n");
+        saida.println("Percentual de ocupação: " + String.format("%.1f", percentualOcupacao) + "%");
+        if (estacionamento.isTarifaDinamicaAtiva()) {
+            saida.println("Tarifa dinâmica: multiplicador atual x" + String.format("%.2f", estacionamento.getMultiplicadorTarifa()));
+        }
+        saida.println("==========================\n");
     }
     
     /**
@@ -336,65 +721,186 @@ public class Principal {
         java.util.List<Veiculo> veiculos = estacionamento.getVeiculosEstacionados();
         
         if (veiculos.isEmpty()) {
-            System.out.println("Nenhum veículo estacionado no momento.\n");
+            saida.println("Nenhum veículo estacionado no momento.\n");
             return;
         }
         
-        System.out.println("\n--- Veículos Estacionados ---");
+        saida.println("\n--- Veículos Estacionados ---");
         int numero = 1;
         for (Veiculo v : veiculos) {
-            System.out.println(numero + ". Placa: " + v.getPlaca() + 
+            saida.println(numero + ". Placa: " + v.getPlaca() + 
                              " | Tipo: " + v.getTipo() +
                              " | Entrada: " + v.getDataEntrada().format(formatter));
             numero++;
         }
-        System.out.println("-----------------------------\n");
+        saida.println("-----------------------------\n");
     }
     
     /**
      * Mostra o total arrecadado em um dia específico.
      */
     private static void mostrarTotalArrecadadoPorDia() {
-        System.out.println("\n=== TOTAL ARRECADADO POR DIA ===");
-        System.out.print("Informe a data (dd/MM/yyyy): ");
-        String dataStr = scanner.nextLine().trim();
+        saida.println("\n=== TOTAL ARRECADADO POR DIA ===");
+        saida.print("Informe a data (dd/MM/yyyy): ");
+        String dataStr = lerLinha().trim();
         
         try {
             DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
             LocalDate data = LocalDate.parse(dataStr, dateFormatter);
-            double total = estacionamento.getTotalArrecadadoPorDia(data);
-            
-            System.out.println("\nData: " + data.format(dateFormatter));
-            System.out.println("Total arrecadado: R$ " + String.format("%.2f", total));
+            acessar(() -> {
+                double total = estacionamento.getTotalArrecadadoPorDia(data);
+                
+                saida.println("\nData: " + data.format(dateFormatter));
+                saida.println("Total arrecadado: R$ " + String.format("%.2f", total));
+            });
+        } catch (DateTimeParseException e) {
+            saida.println("Erro: Formato de data inválido! Use: dd/MM/yyyy");
+            saida.println("Exemplo: 25/12/2024");
+        }
+        saida.println("==================================\n");
+    }
+    
+    /**
+     * Reserva uma vaga para um período futuro.
+     */
+    private static void reservarVaga() {
+        saida.println("\n=== RESERVAR VAGA ===");
+        
+        saida.print("Placa do veículo: ");
+        String placa = lerLinha().trim();
+        
+        if (placa.isEmpty()) {
+            saida.println("Erro: Placa não pode estar vazia!");
+            return;
+        }
+        if (!Estacionamento.isPlacaValida(placa)) {
+            saida.println("Erro: Placa muito longa ou com caracteres inválidos (;)!");
+            return;
+        }
+        
+        String tipo = lerTipoVeiculo();
+        
+        LocalDateTime inicio;
+        LocalDateTime fim;
+        try {
+            saida.print("Início da reserva (dd/MM/yyyy HH:mm): ");
+            inicio = LocalDateTime.parse(lerLinha().trim(), formatter);
+            saida.print("Fim da reserva (dd/MM/yyyy HH:mm): ");
+            fim = LocalDateTime.parse(lerLinha().trim(), formatter);
         } catch (DateTimeParseException e) {
-            System.out.println("Erro: Formato de data inválido! Use: dd/MM/yyyy");
-            System.out.println("Exemplo: 25/12/2024");
+            saida.println("Erro: Formato de data inválido! Use: dd/MM/yyyy HH:mm");
+            saida.println("Exemplo: 25/12/2024 14:30");
+            return;
+        }
+        
+        if (!fim.isAfter(inicio)) {
+            saida.println("\n✗ Erro: O fim da reserva deve ser depois do início!");
+        } else if (estacionamento.reservar(placa, tipo, inicio, fim)) {
+            saida.println("\n✓ Reserva registrada com sucesso!");
+            saida.println("Período: " + inicio.format(formatter) + " até " + fim.format(formatter));
+        } else if (estacionamento.buscarReserva(placa) != null) {
+            saida.println("\n✗ Erro: Já existe uma reserva para esta placa!");
+        } else {
+            saida.println("\n✗ Erro: Não há vaga disponível para reserva neste período!");
+            saida.println("Reservas podem ser feitas com até 90 dias de antecedência.");
+        }
+    }
+    
+    /**
+     * Mostra as reservas pendentes.
+     */
+    private static void mostrarReservas() {
+        saida.println("\n=== RESERVAS ===");
+        
+        java.util.List<Reserva> reservas = estacionamento.getReservas();
+        
+        if (reservas.isEmpty()) {
+            saida.println("Nenhuma reserva pendente.");
+        } else {
+            int numero = 1;
+            for (Reserva r : reservas) {
+                saida.println(numero + ". " + r.toString());
+                numero++;
+            }
+        }
+        saida.println("================\n");
+    }
+    
+    /**
+     * Cancela a reserva de uma placa.
+     */
+    private static void cancelarReserva() {
+        saida.println("\n=== CANCELAR RESERVA ===");
+        
+        saida.print("Placa do veículo: ");
+        String placa = lerLinha().trim();
+        
+        if (estacionamento.cancelarReserva(placa)) {
+            saida.println("\n✓ Reserva cancelada!");
+        } else {
+            saida.println("\n✗ Erro: Nenhuma reserva encontrada para esta placa!");
+        }
+    }
+    
+    /**
+     * Formata a espera estimada para exibição.
+     * @param minutos Minutos estimados (-1 se não houver previsão)
+     * @return Texto da espera estimada
+     */
+    private static String formatarEspera(long minutos) {
+        if (minutos < 0) {
+            return "sem previsão";
+        }
+        long horas = minutos / 60;
+        long resto = minutos % 60;
+        if (horas == 0) {
+            return "~" + Math.max(1, resto) + " minuto(s)";
+        } else if (resto == 0) {
+            return "~" + horas + " hora(s)";
+        }
+        return "~" + horas + " hora(s) e " + resto + " minuto(s)";
+    }
+    
+    /**
+     * Ativa ou desativa a tarifa dinâmica baseada na ocupação.
+     */
+    private static void alternarTarifaDinamica() {
+        saida.println("\n=== TARIFA DINÂMICA ===");
+        if (estacionamento.isTarifaDinamicaAtiva()) {
+            estacionamento.desativarTarifaDinamica();
+            saida.println("Tarifa dinâmica desativada. Voltando à tarifa fixa.");
+        } else {
+            estacionamento.ativarTarifaDinamica();
+            saida.println("Tarifa dinâmica ativada.");
+            saida.println("Ocupação abaixo de 30%: x0,80 | a partir de 80%: x1,50 | a partir de 95%: x2,00");
+            saida.println("Multiplicador atual: x" + String.format("%.2f", estacionamento.getMultiplicadorTarifa()));
         }
-        System.out.println("==================================\n");
+        saida.println("=======================\n");
     }
     
     /**
      * Mostra a fila de espera de veículos.
      */
     private static void mostrarFilaEspera() {
-        System.out.println("\n=== FILA DE ESPERA ===");
+        saida.println("\n=== FILA DE ESPERA ===");
         
         java.util.List<Veiculo> fila = estacionamento.getFilaEspera();
         
         if (fila.isEmpty()) {
-            System.out.println("Nenhum veículo na fila de espera.");
+            saida.println("Nenhum veículo na fila de espera.");
         } else {
-            System.out.println("Total de veículos aguardando: " + fila.size());
-            System.out.println("\nVeículos na fila:");
+            saida.println("Total de veículos aguardando: " + fila.size());
+            saida.println("\nVeículos na fila:");
             int posicao = 1;
             for (Veiculo v : fila) {
-                System.out.println(posicao + ". Placa: " + v.getPlaca() + 
+                saida.println(posicao + ". Placa: " + v.getPlaca() + 
                                  " | Tipo: " + v.getTipo() +
-                                 " | Entrada: " + v.getDataEntrada().format(formatter));
+                                 " | Entrada: " + v.getDataEntrada().format(formatter) +
+                                 " | Espera estimada: " + formatarEspera(estacionamento.estimarEsperaMinutos(posicao)));
                 posicao++;
             }
         }
-        System.out.println("======================\n");
+        saida.println("======================\n");
     }
 }
 
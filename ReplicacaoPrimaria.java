@@ -0,0 +1,455 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Lado primário da replicação do estacionamento.
+ * Guarda uma imagem do estado (ImagemEstado) e a sequência ordenada de operações
+ * posteriores a ela (entradas, saídas, reservas e cancelamentos), e as envia, por socket,
+ * a cada nó seguidor conectado. Um seguidor que se conecta informa a última operação que
+ * aplicou e de qual histórico ela é; se essa operação pertence a este histórico, recebe só o
+ * que falta, senão (seguidor novo, primário reiniciado a partir de uma imagem, ou seguidor que
+ * aplicou operações do primário anterior que o nó promovido não recebeu) recebe antes a
+ * imagem do estado. Cada execução e cada promoção começam um histórico novo; o promovido
+ * só reconhece do histórico anterior as operações até o ponto da promoção.
+ * Com a confirmação síncrona ativa, cada operação aguarda até 1 s a confirmação de ao
+ * menos um seguidor. Operações que os seguidores ainda não receberam quando o primário cai
+ * não se perdem: estão no DiarioOperacoes do primário, cujo caminho é informado aos
+ * seguidores, e o seguidor promovido as aplica antes de assumir (ReplicacaoSeguidora.promover).
+ * Para limitar a memória, quando as operações acumuladas passam do limite elas são
+ * substituídas por uma nova imagem do estado (compactarSeNecessario).
+ * Seguidores que caíram continuam contando no atraso até reconectarem ou se despedirem.
+ *
+ * Protocolo (uma mensagem por linha):
+ * - seguidor -> primário: "SEGUIDOR ultimaSequencia historico identificador" ao conectar ("-" se
+ *   ainda não tem histórico), depois "ACK sequencia"; "FIM" quando deixa de seguir este primário
+ * - primário -> seguidor: "ESTADO historico sequencia tamanho" seguido da imagem em linhas Base64,
+ *   ou "CONTINUAR historico" se o seguidor já tem o estado; depois operações no formato de
+ *   OperacaoReplicada.paraLinha(), e "DIARIO diario imagem" (caminhos codificados como em
+ *   URLEncoder) sempre que o diário do primário mudar
+ */
+public class ReplicacaoPrimaria {
+    private static final long TEMPO_LIMITE_CONFIRMACAO_MS = 1000;
+    private static final int BYTES_POR_LINHA_IMAGEM = 48 * 1024; // Múltiplo de 3: cada linha Base64 é independente
+    private static final int LIMITE_OPERACOES = 10_000;          // Operações mantidas antes de compactar
+
+    private final ServerSocket servidor;
+    private final String historico;                  // Identifica a sequência de operações deste primário
+    private final String historicoAnterior;          // Histórico do primário anterior, na promoção (ou null)
+    private final long sequenciaPromocao;            // Última operação do histórico anterior aplicada no promovido
+    private long sequenciaImagem;                    // Última operação já incluída na imagem
+    private byte[] imagem;                           // Estado completo após a operação sequenciaImagem
+    private long imagemCriadaEm;                     // Momento da imagem (ms desde a época)
+    private final List<OperacaoReplicada> operacoes; // Operação de sequência n fica na posição n - sequenciaImagem - 1
+    private final List<Seguidor> seguidores;         // Conectados
+    private final Map<String, Seguidor> conhecidos;  // Última conexão de cada seguidor, mesmo desconectado
+    private final Thread aceitacao;
+    private boolean confirmacaoSincrona;
+    private volatile DiarioOperacoes diario;         // Diário do primário, informado aos seguidores (ou null)
+    private volatile boolean ativa;
+
+    /**
+     * Inicia um novo histórico a partir do estado atual do estacionamento (vazio ou restaurado
+     * de uma imagem), aceitando seguidores na porta informada (apenas local).
+     * Deve ser chamado antes de qualquer nova operação no estacionamento.
+     * @param porta Porta de escuta (0 para escolher uma porta livre)
+     * @param estacionamento Estacionamento primário
+     * @throws IOException se a porta não puder ser aberta ou o estado não puder ser codificado
+     */
+    public ReplicacaoPrimaria(int porta, Estacionamento estacionamento) throws IOException {
+        this(porta, null, 0, ImagemEstado.serializar(estacionamento));
+    }
+
+    /**
+     * Inicia o primário na promoção de um seguidor: começa um histórico novo, cuja numeração
+     * continua a do histórico anterior a partir da última operação aplicada no seguidor.
+     * Seguidores do histórico anterior que não passaram desse ponto continuam sem receber a imagem.
+     * @param porta Porta de escuta (0 para escolher uma porta livre)
+     * @param historicoAnterior Histórico que o seguidor acompanhava (null se nenhum)
+     * @param sequenciaPromocao Última operação do histórico anterior aplicada no seguidor
+     * @param imagem Estado após essa operação, no formato de ImagemEstado.serializar()
+     * @throws IOException se a porta não puder ser aberta
+     */
+    public ReplicacaoPrimaria(int porta, String historicoAnterior, long sequenciaPromocao, byte[] imagem)
+            throws IOException {
+        this.servidor = new ServerSocket(porta, 50, InetAddress.getLoopbackAddress());
+        this.historico = UUID.randomUUID().toString();
+        this.historicoAnterior = historicoAnterior;
+        this.sequenciaPromocao = sequenciaPromocao;
+        this.sequenciaImagem = sequenciaPromocao;
+        this.imagem = imagem;
+        this.imagemCriadaEm = System.currentTimeMillis();
+        this.operacoes = new ArrayList<>();
+        this.seguidores = new CopyOnWriteArrayList<>();
+        this.conhecidos = new LinkedHashMap<>();
+        this.confirmacaoSincrona = true;
+        this.ativa = true;
+        this.aceitacao = new Thread(this::aceitarSeguidores, "replicacao-primaria");
+        this.aceitacao.setDaemon(true);
+        this.aceitacao.start();
+    }
+
+    /**
+     * Define se cada operação deve aguardar a confirmação de um seguidor.
+     * @param confirmacaoSincrona true para aguardar a confirmação
+     */
+    public synchronized void setConfirmacaoSincrona(boolean confirmacaoSincrona) {
+        this.confirmacaoSincrona = confirmacaoSincrona;
+    }
+
+    /**
+     * Define o diário de operações deste primário, cujo caminho é enviado aos seguidores
+     * para que um deles possa recuperar as operações que não recebeu se o primário cair.
+     * @param diario Diário em que o estacionamento grava as operações (null se nenhum)
+     */
+    public void setDiario(DiarioOperacoes diario) {
+        this.diario = diario;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Retorna o identificador do histórico deste primário.
+     * @return Histórico
+     */
+    public String getHistorico() {
+        return historico;
+    }
+
+    /**
+     * Retorna a porta em que os seguidores se conectam.
+     * @return Porta de escuta
+     */
+    public int getPorta() {
+        return servidor.getLocalPort();
+    }
+
+    /**
+     * Atribui à operação o próximo número da sequência, sem publicá-la, para que ela possa
+     * ser gravada no diário antes de ser enviada. Deve ser seguido de publicar().
+     * @param operacao Operação registrada no estacionamento primário
+     */
+    public synchronized void numerar(OperacaoReplicada operacao) {
+        operacao.setSequencia(getUltimaSequencia() + 1);
+    }
+
+    /**
+     * Numera a operação, acrescenta ao histórico e a envia aos seguidores.
+     * Com a confirmação síncrona ativa e algum seguidor conectado, aguarda a confirmação
+     * por até 1 s; depois disso a operação segue sem confirmação.
+     * @param operacao Operação registrada no estacionamento primário
+     */
+    public synchronized void publicar(OperacaoReplicada operacao) {
+        operacao.setSequencia(getUltimaSequencia() + 1);
+        operacao.setEnviadoEm(System.currentTimeMillis());
+        operacoes.add(operacao);
+        notifyAll();
+
+        if (!confirmacaoSincrona || seguidores.isEmpty()) {
+            return;
+        }
+        long prazo = System.currentTimeMillis() + TEMPO_LIMITE_CONFIRMACAO_MS;
+        long restante = TEMPO_LIMITE_CONFIRMACAO_MS;
+        while (getMaiorConfirmacao() < operacao.getSequencia() && restante > 0 && !seguidores.isEmpty()) {
+            try {
+                wait(restante);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            restante = prazo - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Substitui as operações acumuladas por uma imagem do estado atual, se passaram do limite.
+     * Deve ser chamado pela thread que altera o estacionamento, depois de publicar uma operação
+     * já concluída, para que a imagem corresponda exatamente à última sequência.
+     * Seguidores que ainda não receberam as operações descartadas recebem a nova imagem.
+     * @param estacionamento Estacionamento primário
+     */
+    public void compactarSeNecessario(Estacionamento estacionamento) {
+        synchronized (this) {
+            if (operacoes.size() < LIMITE_OPERACOES) {
+                return;
+            }
+        }
+        byte[] novaImagem;
+        try {
+            novaImagem = ImagemEstado.serializar(estacionamento);
+        } catch (IOException e) {
+            return; // Mantém as operações e tenta de novo na próxima
+        }
+        synchronized (this) {
+            sequenciaImagem = getUltimaSequencia();
+            imagem = novaImagem;
+            imagemCriadaEm = System.currentTimeMillis();
+            operacoes.clear();
+        }
+    }
+
+    /**
+     * Retorna a sequência da última operação publicada.
+     * @return Última sequência (0 se nenhuma)
+     */
+    public synchronized long getUltimaSequencia() {
+        return sequenciaImagem + operacoes.size();
+    }
+
+    /**
+     * Retorna o número de seguidores conectados.
+     * @return Quantidade de seguidores
+     */
+    public int getQuantidadeSeguidores() {
+        return seguidores.size();
+    }
+
+    /**
+     * Retorna o número de seguidores que já se conectaram e estão desconectados sem terem se despedido.
+     * @return Quantidade de seguidores desconectados
+     */
+    public synchronized int getQuantidadeSeguidoresDesconectados() {
+        return conhecidos.size() - seguidores.size();
+    }
+
+    /**
+     * Retorna quantas operações o seguidor mais atrasado ainda não confirmou, incluindo os desconectados.
+     * @return Atraso em número de operações (0 se não houver seguidores)
+     */
+    public synchronized long getAtrasoOperacoes() {
+        long atraso = 0;
+        for (Seguidor s : conhecidos.values()) {
+            atraso = Math.max(atraso, getUltimaSequencia() - s.confirmada);
+        }
+        return atraso;
+    }
+
+    /**
+     * Retorna há quanto tempo a operação mais antiga ainda não confirmada por algum seguidor
+     * (conectado ou não) foi publicada.
+     * @return Atraso em milissegundos (0 se tudo foi confirmado)
+     */
+    public synchronized long getAtrasoMs() {
+        long menorConfirmada = getUltimaSequencia();
+        for (Seguidor s : conhecidos.values()) {
+            menorConfirmada = Math.min(menorConfirmada, s.confirmada);
+        }
+        if (menorConfirmada >= getUltimaSequencia()) {
+            return 0;
+        }
+        if (menorConfirmada < sequenciaImagem) {
+            return System.currentTimeMillis() - imagemCriadaEm; // Seguidor ainda sem a imagem atual
+        }
+        return System.currentTimeMillis() - operacoes.get((int) (menorConfirmada - sequenciaImagem)).getEnviadoEm();
+    }
+
+    /**
+     * Encerra o primário e desconecta os seguidores.
+     */
+    public void fechar() {
+        ativa = false;
+        try {
+            servidor.close();
+        } catch (IOException e) {
+            // Já fechado
+        }
+        for (Seguidor s : seguidores) {
+            s.fechar();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    // Verifica se a operação informada pelo seguidor faz parte do histórico deste primário
+    private boolean estaNesteHistorico(String historicoSeguidor, long sequencia) {
+        if (sequencia == 0) {
+            return false;
+        }
+        if (historico.equals(historicoSeguidor)) {
+            return sequencia <= getUltimaSequencia();
+        }
+        // Do histórico anterior, só as operações que o nó promovido também aplicou
+        return historicoSeguidor.equals(historicoAnterior) && sequencia <= sequenciaPromocao;
+    }
+
+    private static String codificar(String texto) {
+        return URLEncoder.encode(texto, StandardCharsets.UTF_8);
+    }
+
+    private long getMaiorConfirmacao() {
+        long maior = 0;
+        for (Seguidor s : seguidores) {
+            maior = Math.max(maior, s.confirmada);
+        }
+        return maior;
+    }
+
+    private void aceitarSeguidores() {
+        while (ativa) {
+            try {
+                Socket socket = servidor.accept();
+                socket.setTcpNoDelay(true);
+                Seguidor seguidor = new Seguidor(socket);
+                Thread envio = new Thread(seguidor::enviar, "replicacao-envio-" + socket.getPort());
+                envio.setDaemon(true);
+                envio.start();
+            } catch (IOException e) {
+                // Servidor fechado ou falha ao aceitar: tenta de novo enquanto ativo
+            }
+        }
+    }
+
+    // Conexão com um seguidor: uma thread envia as operações, outra lê as confirmações
+    private class Seguidor {
+        private final Socket socket;
+        private volatile long confirmada;
+        private String identificador;
+
+        Seguidor(Socket socket) {
+            this.socket = socket;
+        }
+
+        void enviar() {
+            try {
+                BufferedReader entrada = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter saida = new BufferedWriter(
+                        new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+                String apresentacao = entrada.readLine();
+                String[] campos = (apresentacao != null) ? apresentacao.split(" ") : new String[0];
+                if (campos.length != 4 || !campos[0].equals("SEGUIDOR")) {
+                    fechar();
+                    return;
+                }
+                long enviada = Long.parseLong(campos[1]);
+                boolean precisaImagem;
+                synchronized (ReplicacaoPrimaria.this) {
+                    // Só continua quem está em um ponto deste histórico ainda coberto pelas operações guardadas;
+                    // os demais (vazios, de outro histórico, à frente ou anteriores à imagem) recebem o estado completo
+                    precisaImagem = !estaNesteHistorico(campos[2], enviada) || enviada < sequenciaImagem;
+                    confirmada = precisaImagem ? 0 : enviada;
+                    seguidores.add(this);
+                    conhecidos.put(campos[3], this); // Substitui a conexão anterior do mesmo seguidor
+                    identificador = campos[3];
+                }
+
+                Thread leitura = new Thread(() -> lerConfirmacoes(entrada), "replicacao-ack-" + socket.getPort());
+                leitura.setDaemon(true);
+                leitura.start();
+                if (!precisaImagem) {
+                    saida.write("CONTINUAR " + historico);
+                    saida.newLine();
+                    saida.flush();
+                }
+
+                DiarioOperacoes diarioEnviado = null;
+                while (ativa && !socket.isClosed()) {
+                    List<OperacaoReplicada> pendentes;
+                    byte[] estado = null;
+                    synchronized (ReplicacaoPrimaria.this) {
+                        while (ativa && !socket.isClosed() && !precisaImagem && enviada >= getUltimaSequencia()
+                                && diario == diarioEnviado) {
+                            ReplicacaoPrimaria.this.wait(500);
+                        }
+                        // Operações ainda não enviadas podem ter sido compactadas: a imagem as substitui
+                        if (precisaImagem || enviada < sequenciaImagem) {
+                            estado = imagem;
+                            enviada = sequenciaImagem;
+                            precisaImagem = false;
+                        }
+                        pendentes = new ArrayList<>(operacoes.subList((int) (enviada - sequenciaImagem), operacoes.size()));
+                    }
+                    if (estado != null) {
+                        enviarImagem(saida, enviada, estado);
+                    }
+                    DiarioOperacoes atual = diario;
+                    if (atual != diarioEnviado && atual != null) {
+                        saida.write("DIARIO " + codificar(atual.getArquivo().toString())
+                                + " " + codificar(atual.getImagem().toString()));
+                        saida.newLine();
+                    }
+                    diarioEnviado = atual;
+                    // Envia o lote inteiro de uma vez
+                    for (OperacaoReplicada op : pendentes) {
+                        saida.write(op.paraLinha());
+                        saida.newLine();
+                    }
+                    saida.flush();
+                    enviada += pendentes.size();
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Seguidor desconectado
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                fechar();
+            }
+        }
+
+        void enviarImagem(BufferedWriter saida, long sequencia, byte[] estado) throws IOException {
+            saida.write("ESTADO " + historico + " " + sequencia + " " + estado.length);
+            saida.newLine();
+            for (int i = 0; i < estado.length; i += BYTES_POR_LINHA_IMAGEM) {
+                byte[] parte = Arrays.copyOfRange(estado, i, Math.min(estado.length, i + BYTES_POR_LINHA_IMAGEM));
+                saida.write(Base64.getEncoder().encodeToString(parte));
+                saida.newLine();
+            }
+            saida.flush();
+        }
+
+        void lerConfirmacoes(BufferedReader entrada) {
+            try {
+                String linha;
+                while ((linha = entrada.readLine()) != null) {
+                    if (linha.equals("FIM")) {
+                        synchronized (ReplicacaoPrimaria.this) {
+                            conhecidos.remove(identificador, this); // Deixou de seguir: não conta mais no atraso
+                        }
+                        break;
+                    }
+                    if (linha.startsWith("ACK ")) {
+                        long sequencia = Long.parseLong(linha.substring("ACK ".length()).trim());
+                        synchronized (ReplicacaoPrimaria.this) {
+                            confirmada = Math.max(confirmada, sequencia);
+                            ReplicacaoPrimaria.this.notifyAll();
+                        }
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Seguidor desconectado
+            } finally {
+                fechar();
+            }
+        }
+
+        void fechar() {
+            seguidores.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Já fechado
+            }
+            synchronized (ReplicacaoPrimaria.this) {
+                ReplicacaoPrimaria.this.notifyAll();
+            }
+        }
+    }
+}
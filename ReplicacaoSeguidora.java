@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Lado seguidor da replicação do estacionamento.
+ * Conecta-se ao nó primário, recebe a imagem do estado (quando ainda não acompanha o
+ * histórico dele) e a sequência de operações, e as aplica, em ordem e exatamente uma vez,
+ * ao seu próprio Estacionamento, confirmando cada lote aplicado.
+ * Se a conexão cair, reconecta e pede as operações a partir da última aplicada; ao parar
+ * ou mudar de primário, despede-se do anterior para não contar mais no atraso dele.
+ * Em caso de falha do primário, promover() transforma este nó em primário, com um histórico
+ * novo que continua a numeração das operações. Antes disso, recuperarDoDiario() aplica as
+ * operações que o primário gravou no seu diário (DiarioOperacoes) e não chegaram a este nó,
+ * para que nenhuma operação concluída no primário se perca.
+ * Enquanto o seguidor está ativo, todo acesso ao estacionamento local, inclusive
+ * consultas, deve passar por consultar(), que usa a mesma trava da aplicação.
+ */
+public class ReplicacaoSeguidora {
+    private static final long INTERVALO_RECONEXAO_MS = 500;
+
+    private final Estacionamento estacionamento;
+    private final Object trava; // Protege o estacionamento local, o histórico e a última sequência
+    private final Thread recepcao;
+    private final String identificador; // Identifica este seguidor para o primário entre reconexões
+    private String historico;  // Histórico do primário que está sendo acompanhado (null se nenhum)
+    private long ultimaAplicada;
+    private Path diarioPrimario;  // Diário e imagem informados pelo primário (null se não informados)
+    private Path imagemPrimario;
+    private volatile String host;
+    private volatile int porta;
+    private volatile boolean ativa;
+    private volatile boolean conectada;
+    private volatile long atrasoMs;
+    private volatile long divergencias; // Operações recusadas pelo estacionamento local
+    private Socket socket;
+    private BufferedWriter envio; // Canal de envio da conexão atual (protegido por this)
+
+    /**
+     * Inicia o seguidor, conectando-se ao primário informado.
+     * O estacionamento local só deve ser alterado por este seguidor enquanto ele estiver ativo;
+     * seu estado é substituído pelo do primário na primeira conexão. Ele não deve ter log de
+     * auditoria, pois as transações já são registradas no primário.
+     * @param estacionamento Estacionamento local que receberá as operações
+     * @param host Endereço do primário
+     * @param porta Porta do primário
+     */
+    public ReplicacaoSeguidora(Estacionamento estacionamento, String host, int porta) {
+        this.estacionamento = estacionamento;
+        this.trava = new Object();
+        this.identificador = UUID.randomUUID().toString();
+        this.historico = null;
+        this.ultimaAplicada = 0;
+        this.host = host;
+        this.porta = porta;
+        this.ativa = true;
+        this.recepcao = new Thread(this::executar, "replicacao-seguidora");
+        this.recepcao.setDaemon(true);
+        this.recepcao.start();
+    }
+
+    /**
+     * Passa a seguir outro primário (por exemplo, outro seguidor que foi promovido).
+     * @param host Endereço do novo primário
+     * @param porta Porta do novo primário
+     */
+    public void redirecionar(String host, int porta) {
+        this.host = host;
+        this.porta = porta;
+        desconectar();
+    }
+
+    /**
+     * Para de seguir o primário e aplica as operações do histórico acompanhado que estão no
+     * diário do primário (DiarioOperacoes) e não foram recebidas; se o diário começa depois da
+     * última operação aplicada, restaura antes a imagem em que ele começa.
+     * Deve ser chamado antes de promover(), depois da queda do primário. Chamar de novo não
+     * repete operações.
+     * @return Quantidade de operações recuperadas (0 se este nó já tinha todas)
+     * @throws IOException se o diário do primário não puder ser lido ou não continuar o estado
+     *         deste nó; o nó fica parado e pode ser promovido mesmo assim, sem essas operações
+     */
+    public long recuperarDoDiario() throws IOException {
+        parar();
+        synchronized (trava) {
+            return aplicarDiario();
+        }
+    }
+
+    /**
+     * Para de seguir o primário e passa a atuar como primário, aceitando seguidores na porta informada.
+     * O estacionamento local volta a aceitar operações e a publicá-las; o estado atual
+     * vira a imagem enviada aos seguidores que não estão em um ponto do histórico deste nó.
+     * @param portaPrimaria Porta onde os demais seguidores devem se conectar
+     * @return Replicação primária já associada ao estacionamento local
+     * @throws IOException se a porta não puder ser aberta
+     */
+    public ReplicacaoPrimaria promover(int portaPrimaria) throws IOException {
+        parar();
+        ReplicacaoPrimaria primaria;
+        synchronized (trava) {
+            if (historico == null) {
+                primaria = new ReplicacaoPrimaria(portaPrimaria, estacionamento); // Nunca recebeu nada do primário
+            } else {
+                primaria = new ReplicacaoPrimaria(portaPrimaria, historico, ultimaAplicada,
+                        ImagemEstado.serializar(estacionamento));
+            }
+            estacionamento.setReplicacao(primaria);
+        }
+        return primaria;
+    }
+
+    /**
+     * Executa uma consulta ao estacionamento local sem concorrer com a aplicação das operações replicadas.
+     * A consulta não deve aguardar a entrada do usuário, pois a replicação fica parada enquanto ela executa.
+     * @param consulta Código que acessa o estacionamento local
+     */
+    public void consultar(Runnable consulta) {
+        synchronized (trava) {
+            consulta.run();
+        }
+    }
+
+    /**
+     * Para de seguir o primário.
+     */
+    public void parar() {
+        ativa = false;
+        desconectar();
+        recepcao.interrupt();
+        try {
+            recepcao.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retorna a sequência da última operação aplicada.
+     * @return Última sequência aplicada (0 se nenhuma)
+     */
+    public long getUltimaSequenciaAplicada() {
+        synchronized (trava) {
+            return ultimaAplicada;
+        }
+    }
+
+    /**
+     * Retorna o tempo entre a publicação no primário e a aplicação local da última operação.
+     * @return Atraso de replicação em milissegundos
+     */
+    public long getAtrasoMs() {
+        return atrasoMs;
+    }
+
+    /**
+     * Retorna se o seguidor está conectado ao primário.
+     * @return true se conectado
+     */
+    public boolean isConectada() {
+        return conectada;
+    }
+
+    /**
+     * Retorna quantas operações o estacionamento local recusou (indica estado divergente).
+     * @return Número de operações recusadas
+     */
+    public long getDivergencias() {
+        return divergencias;
+    }
+
+    private void executar() {
+        while (ativa) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress(host, porta), (int) INTERVALO_RECONEXAO_MS);
+                s.setTcpNoDelay(true);
+                BufferedReader entrada = new BufferedReader(
+                        new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter saida = new BufferedWriter(
+                        new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+                synchronized (this) {
+                    socket = s;
+                    envio = saida;
+                }
+
+                String apresentacao;
+                synchronized (trava) {
+                    apresentacao = "SEGUIDOR " + ultimaAplicada + " " + (historico != null ? historico : "-")
+                            + " " + identificador;
+                }
+                enviarLinha(saida, apresentacao);
+                conectada = true;
+
+                String linha;
+                while (ativa && (linha = entrada.readLine()) != null) {
+                    long aplicada;
+                    if (linha.startsWith("ESTADO ")) {
+                        aplicada = carregarImagem(linha, entrada);
+                    } else if (linha.startsWith("CONTINUAR ")) {
+                        aplicada = continuar(linha.substring("CONTINUAR ".length()));
+                    } else if (linha.startsWith("DIARIO ")) {
+                        aplicada = registrarDiario(linha);
+                    } else {
+                        aplicada = aplicar(OperacaoReplicada.deLinha(linha));
+                    }
+                    if (aplicada < 0) {
+                        break; // Lacuna na sequência: reconecta e pede de novo
+                    }
+                    // Confirma quando não há mais nada chegando, evitando uma confirmação por linha
+                    if (!entrada.ready()) {
+                        enviarLinha(saida, "ACK " + aplicada);
+                    }
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // Primário indisponível ou mensagem inválida: tenta novamente
+            } finally {
+                conectada = false;
+                synchronized (this) {
+                    socket = null;
+                    envio = null;
+                }
+            }
+
+            if (ativa) {
+                try {
+                    Thread.sleep(INTERVALO_RECONEXAO_MS);
+                } catch (InterruptedException e) {
+                    // Parada solicitada
+                }
+            }
+        }
+    }
+
+    // Recebe a imagem anunciada por "ESTADO historico sequencia tamanho" e substitui o estado local
+    private long carregarImagem(String cabecalho, BufferedReader entrada) throws IOException {
+        String[] campos = cabecalho.split(" ");
+        if (campos.length != 4) {
+            throw new IllegalArgumentException("Cabeçalho de imagem mal formado: " + cabecalho);
+        }
+        long sequencia = Long.parseLong(campos[2]);
+        ByteBuffer imagem = ByteBuffer.allocate(Integer.parseInt(campos[3]));
+        while (imagem.hasRemaining()) {
+            String linha = entrada.readLine();
+            if (linha == null) {
+                throw new IOException("Conexão encerrada durante o envio da imagem");
+            }
+            imagem.put(Base64.getDecoder().decode(linha));
+        }
+        imagem.flip();
+
+        synchronized (trava) {
+            ImagemEstado.restaurar(estacionamento, imagem);
+            historico = campos[1];
+            ultimaAplicada = sequencia;
+        }
+        return sequencia;
+    }
+
+    // O primário aceitou o estado local como parte do histórico dele: passa a acompanhá-lo
+    private long continuar(String historicoPrimario) {
+        synchronized (trava) {
+            historico = historicoPrimario;
+            return ultimaAplicada;
+        }
+    }
+
+    // Guarda os caminhos anunciados por "DIARIO diario imagem"
+    private long registrarDiario(String linha) {
+        String[] campos = linha.split(" ");
+        if (campos.length != 3) {
+            throw new IllegalArgumentException("Anúncio de diário mal formado: " + linha);
+        }
+        synchronized (trava) {
+            diarioPrimario = Paths.get(URLDecoder.decode(campos[1], StandardCharsets.UTF_8));
+            imagemPrimario = Paths.get(URLDecoder.decode(campos[2], StandardCharsets.UTF_8));
+            return ultimaAplicada;
+        }
+    }
+
+    // Aplica, a partir do diário do primário, as operações do histórico acompanhado que faltam.
+    // Chamado com a trava, depois de parar a recepção.
+    private long aplicarDiario() throws IOException {
+        if (historico == null || diarioPrimario == null) {
+            return 0; // Nada recebido do primário: não há histórico a completar
+        }
+        long recuperadas = 0;
+        DiarioOperacoes.Conteudo conteudo = DiarioOperacoes.ler(diarioPrimario);
+        long base = conteudo.getBase(historico);
+        if (base < 0) {
+            throw new IOException("Diário do primário inutilizável: o diário " + diarioPrimario
+                    + " não contém o histórico acompanhado (" + historico + ")");
+        }
+        if (ultimaAplicada < base) {
+            // As operações que faltam até a base só estão na imagem em que o diário começa
+            ByteBuffer imagem = ImagemEstado.lerArquivo(imagemPrimario);
+            if (ImagemEstado.getIdentificador(imagem) != conteudo.getIdentificadorImagem()) {
+                throw new IOException("Diário do primário inutilizável: a imagem " + imagemPrimario
+                        + " não é a imagem em que o diário começa");
+            }
+            ImagemEstado.restaurar(estacionamento, imagem);
+            recuperadas += base - ultimaAplicada;
+            ultimaAplicada = base;
+        }
+        for (OperacaoReplicada operacao : conteudo.getOperacoes(historico)) {
+            if (operacao.getSequencia() == ultimaAplicada + 1) {
+                if (!operacao.aplicarEm(estacionamento)) {
+                    divergencias++;
+                }
+                ultimaAplicada++;
+                recuperadas++;
+            }
+        }
+        return recuperadas;
+    }
+
+    // Aplica a operação se for a próxima da sequência; repetidas são ignoradas
+    private long aplicar(OperacaoReplicada operacao) {
+        synchronized (trava) {
+            long esperada = ultimaAplicada + 1;
+            if (operacao.getSequencia() < esperada) {
+                return ultimaAplicada; // Já aplicada: não conta de novo
+            }
+            if (operacao.getSequencia() > esperada) {
+                return -1;
+            }
+            if (!operacao.aplicarEm(estacionamento)) {
+                divergencias++;
+            }
+            ultimaAplicada = esperada;
+            atrasoMs = Math.max(0, System.currentTimeMillis() - operacao.getEnviadoEm());
+            return ultimaAplicada;
+        }
+    }
+
+    // Uma linha por vez: a despedida pode ser enviada por outra thread
+    private static void enviarLinha(BufferedWriter saida, String linha) throws IOException {
+        synchronized (saida) {
+            saida.write(linha);
+            saida.newLine();
+            saida.flush();
+        }
+    }
+
+    // Despede-se do primário atual e fecha a conexão
+    private synchronized void desconectar() {
+        if (envio != null) {
+            try {
+                enviarLinha(envio, "FIM");
+            } catch (IOException e) {
+                // Primário já indisponível
+            }
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Já fechado
+            }
+        }
+    }
+}
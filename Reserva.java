@@ -0,0 +1,49 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Classe que representa a reserva de uma vaga para um período futuro.
+ */
+public class Reserva {
+    private String placa;
+    private String tipo;
+    private LocalDateTime inicio;
+    private LocalDateTime fim;
+
+    /**
+     * Construtor da reserva.
+     * @param placa Placa do veículo
+     * @param tipo Tipo do veículo (Carro, Moto, etc.)
+     * @param inicio Início do período reservado
+     * @param fim Fim do período reservado
+     */
+    public Reserva(String placa, String tipo, LocalDateTime inicio, LocalDateTime fim) {
+        this.placa = placa;
+        this.tipo = tipo;
+        this.inicio = inicio;
+        this.fim = fim;
+    }
+
+    public String getPlaca() {
+        return placa;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public LocalDateTime getInicio() {
+        return inicio;
+    }
+
+    public LocalDateTime getFim() {
+        return fim;
+    }
+
+    @Override
+    public String toString() {
+        DateTimeFormatter formato = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+        return String.format("Placa: %s | Tipo: %s | De: %s | Até: %s",
+                placa, tipo, inicio.format(formato), fim.format(formato));
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saída de texto assíncrona com buffer limitado.
+ * As linhas são enfileiradas pela thread que chama e gravadas em lote por uma
+ * thread escritora dedicada, que descarrega o destino quando o lote atinge o
+ * tamanho máximo ou quando o intervalo de tempo expira.
+ */
+public class SaidaAssincrona {
+    private static final int CAPACIDADE_PADRAO = 8192;
+    private static final int TAMANHO_LOTE_PADRAO = 64;
+    private static final long INTERVALO_MS_PADRAO = 50;
+
+    private static SaidaAssincrona console; // Saída compartilhada para o terminal
+
+    private final Writer destino;
+    private final BlockingQueue<Object> fila; // Linhas (String) ou pedidos de descarga (CountDownLatch)
+    private final int tamanhoLote;
+    private final long intervaloNanos;
+    private final Thread escritora;
+    private volatile boolean ativa;
+    private volatile IOException ultimoErro;
+
+    /**
+     * Cria uma saída assíncrona com os limites padrão.
+     * @param destino Destino onde o texto será gravado
+     * @param nomeThread Nome da thread escritora
+     */
+    public SaidaAssincrona(Writer destino, String nomeThread) {
+        this(destino, nomeThread, CAPACIDADE_PADRAO, TAMANHO_LOTE_PADRAO, INTERVALO_MS_PADRAO);
+    }
+
+    /**
+     * Cria uma saída assíncrona.
+     * @param destino Destino onde o texto será gravado
+     * @param nomeThread Nome da thread escritora
+     * @param capacidade Número máximo de linhas aguardando gravação
+     * @param tamanhoLote Número de linhas que força a descarga do destino
+     * @param intervaloMs Tempo máximo, em milissegundos, que uma linha espera para ser descarregada
+     */
+    public SaidaAssincrona(Writer destino, String nomeThread, int capacidade, int tamanhoLote, long intervaloMs) {
+        this.destino = destino;
+        this.fila = new ArrayBlockingQueue<>(capacidade);
+        this.tamanhoLote = tamanhoLote;
+        this.intervaloNanos = TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+        this.ativa = true;
+        this.escritora = new Thread(this::executar, nomeThread);
+        this.escritora.setDaemon(true);
+        this.escritora.start();
+    }
+
+    /**
+     * Retorna a saída compartilhada associada ao terminal (System.out).
+     * O texto é gravado pelo próprio PrintStream, que usa a codificação do console.
+     * @return Saída assíncrona do console
+     */
+    public static synchronized SaidaAssincrona console() {
+        if (console == null) {
+            console = new SaidaAssincrona(new EscritorPrintStream(System.out), "saida-console");
+        }
+        return console;
+    }
+
+    /**
+     * Enfileira uma linha de texto para gravação.
+     * @param linha Texto a ser gravado (a quebra de linha é adicionada)
+     */
+    public void println(String linha) {
+        enfileirar(linha + System.lineSeparator());
+    }
+
+    /**
+     * Enfileira uma quebra de linha.
+     */
+    public void println() {
+        enfileirar(System.lineSeparator());
+    }
+
+    /**
+     * Enfileira um texto sem quebra de linha.
+     * @param texto Texto a ser gravado
+     */
+    public void print(String texto) {
+        enfileirar(texto);
+    }
+
+    /**
+     * Aguarda até que todo o texto enfileirado tenha sido gravado e descarregado.
+     * Deve ser chamado antes de ler a entrada do usuário, para que o prompt apareça.
+     * Retorna sem esperar se a saída já foi encerrada.
+     */
+    public void flush() {
+        CountDownLatch descarregado = new CountDownLatch(1);
+        if (!escritora.isAlive() || !enfileirar(descarregado)) {
+            return;
+        }
+        try {
+            // Se a escritora terminar sem atender o pedido, não há mais quem o libere
+            while (!descarregado.await(INTERVALO_MS_PADRAO, TimeUnit.MILLISECONDS)) {
+                if (!escritora.isAlive()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Grava tudo o que estiver pendente e encerra a thread escritora.
+     */
+    public void close() {
+        flush();
+        ativa = false;
+        escritora.interrupt();
+        try {
+            escritora.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Retorna o último erro de gravação ocorrido na thread escritora.
+     * @return Último erro ou null se nenhum ocorreu
+     */
+    public IOException getUltimoErro() {
+        return ultimoErro;
+    }
+
+    // Só bloqueia quem chama se o buffer estiver cheio; retorna false se o item foi descartado
+    private boolean enfileirar(Object item) {
+        if (!ativa) {
+            return false;
+        }
+        try {
+            fila.put(item);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Laço da thread escritora: agrupa linhas e descarrega por tamanho ou tempo
+    private void executar() {
+        StringBuilder lote = new StringBuilder();
+        List<Object> itens = new ArrayList<>(tamanhoLote);
+        int linhasNoLote = 0;
+        long prazo = 0;
+
+        while (ativa || !fila.isEmpty()) {
+            try {
+                Object item;
+                if (linhasNoLote == 0) {
+                    item = fila.take();
+                } else {
+                    item = fila.poll(Math.max(0, prazo - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+
+                itens.clear();
+                if (item != null) {
+                    itens.add(item);
+                    fila.drainTo(itens, tamanhoLote);
+                }
+
+                CountDownLatch pedidoDescarga = null;
+                for (Object i : itens) {
+                    if (i instanceof CountDownLatch) {
+                        // Grava o que veio antes do pedido e o libera
+                        gravar(lote);
+                        linhasNoLote = 0;
+                        if (pedidoDescarga != null) {
+                            pedidoDescarga.countDown();
+                        }
+                        pedidoDescarga = (CountDownLatch) i;
+                    } else {
+                        if (linhasNoLote == 0) {
+                            prazo = System.nanoTime() + intervaloNanos;
+                        }
+                        lote.append((String) i);
+                        linhasNoLote++;
+                    }
+                }
+
+                if (pedidoDescarga != null) {
+                    gravar(lote);
+                    linhasNoLote = 0;
+                    pedidoDescarga.countDown();
+                } else if (linhasNoLote >= tamanhoLote
+                        || (linhasNoLote > 0 && System.nanoTime() - prazo >= 0)) {
+                    gravar(lote);
+                    linhasNoLote = 0;
+                }
+            } catch (InterruptedException e) {
+                // Encerramento solicitado: o laço termina quando a fila esvaziar
+            }
+        }
+        gravar(lote);
+    }
+
+    private void gravar(StringBuilder lote) {
+        if (lote.length() == 0) {
+            return;
+        }
+        try {
+            destino.write(lote.toString());
+            destino.flush();
+        } catch (IOException e) {
+            ultimoErro = e;
+        }
+        lote.setLength(0);
+    }
+
+    // Adapta um PrintStream a Writer sem trocar a codificação dele
+    private static class EscritorPrintStream extends Writer {
+        private final PrintStream destino;
+
+        EscritorPrintStream(PrintStream destino) {
+            this.destino = destino;
+        }
+
+        @Override
+        public void write(char[] texto, int inicio, int tamanho) {
+            destino.print(new String(texto, inicio, tamanho));
+        }
+
+        @Override
+        public void write(String texto) {
+            destino.print(texto);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            destino.flush();
+            if (destino.checkError()) {
+                throw new IOException("Falha ao gravar no console");
+            }
+        }
+
+        @Override
+        public void close() {
+            destino.flush();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Tarifa dinâmica baseada na ocupação do estacionamento.
+ * O tempo é dividido em faixas de 1 hora. Para cada faixa é registrado o
+ * multiplicador em vigor, definido pelo pico de ocupação observado nela:
+ * - ocupação abaixo de 30%: desconto (x0,80)
+ * - ocupação a partir de 80%: acréscimo (x1,50)
+ * - ocupação a partir de 95%: acréscimo (x2,00)
+ * - demais casos: tarifa normal (x1,00)
+ * As faixas encerradas ficam em uma soma acumulada (prefixos), permitindo
+ * calcular o valor de qualquer permanência, mesmo de vários dias, em tempo constante.
+ */
+public class TarifaDinamica {
+    private static final double LIMITE_DESCONTO = 0.30;
+    private static final double LIMITE_ACRESCIMO = 0.80;
+    private static final double LIMITE_LOTADO = 0.95;
+    private static final double MULTIPLICADOR_DESCONTO = 0.8;
+    private static final double MULTIPLICADOR_NORMAL = 1.0;
+    private static final double MULTIPLICADOR_ACRESCIMO = 1.5;
+    private static final double MULTIPLICADOR_LOTADO = 2.0;
+    private static final long SEGUNDOS_POR_FAIXA = 3600;
+
+    private long faixaInicial;          // Primeira faixa registrada (-1 se nenhuma)
+    private long faixaAtual;            // Faixa aberta, ainda recebendo ocupações
+    private double multiplicadorAtual;  // Multiplicador da faixa aberta
+    private double ultimaOcupacao;      // Ocupação (fração) após o último registro
+    private double[] prefixos;          // prefixos[i] = soma dos multiplicadores das i primeiras faixas encerradas
+    private int faixasEncerradas;
+
+    /**
+     * Cria a tarifa dinâmica sem nenhuma faixa registrada.
+     */
+    public TarifaDinamica() {
+        this.faixaInicial = -1;
+        this.faixaAtual = -1;
+        this.multiplicadorAtual = MULTIPLICADOR_NORMAL;
+        this.ultimaOcupacao = 0.0;
+        this.prefixos = new double[64];
+        this.faixasEncerradas = 0;
+    }
+
+    /**
+     * Recria a tarifa dinâmica com as faixas gravadas em uma imagem de estado.
+     * @param faixaInicial Primeira faixa registrada (-1 se nenhuma)
+     * @param faixaAtual Faixa aberta
+     * @param multiplicadorAtual Multiplicador da faixa aberta
+     * @param ultimaOcupacao Ocupação após o último registro
+     * @param prefixos Somas acumuladas das faixas encerradas (prefixos[0] = 0)
+     * @param faixasEncerradas Número de faixas encerradas
+     */
+    TarifaDinamica(long faixaInicial, long faixaAtual, double multiplicadorAtual, double ultimaOcupacao,
+                   double[] prefixos, int faixasEncerradas) {
+        this.faixaInicial = faixaInicial;
+        this.faixaAtual = faixaAtual;
+        this.multiplicadorAtual = multiplicadorAtual;
+        this.ultimaOcupacao = ultimaOcupacao;
+        this.prefixos = Arrays.copyOf(prefixos, Math.max(64, faixasEncerradas + 1));
+        this.faixasEncerradas = faixasEncerradas;
+    }
+
+    /**
+     * Registra a ocupação do estacionamento em um momento.
+     * Deve ser chamado a cada entrada ou saída, com o horário atual.
+     * @param momento Data e hora da mudança de ocupação
+     * @param vagasOcupadas Número de vagas ocupadas após a mudança
+     * @param capacidadeTotal Capacidade total do estacionamento
+     */
+    public void registrarOcupacao(LocalDateTime momento, int vagasOcupadas, int capacidadeTotal) {
+        double ocupacao = (capacidadeTotal > 0) ? (double) vagasOcupadas / capacidadeTotal : 1.0;
+        long faixa = faixa(momento);
+
+        if (faixaInicial < 0) {
+            faixaInicial = faixa;
+            faixaAtual = faixa;
+            multiplicadorAtual = multiplicadorPara(ocupacao);
+        } else if (faixa > faixaAtual) {
+            // Encerra a faixa aberta e preenche as faixas sem movimento com a ocupação que ficou
+            adicionarFaixaEncerrada(multiplicadorAtual);
+            double multiplicadorSemMovimento = multiplicadorPara(ultimaOcupacao);
+            for (long f = faixaAtual + 1; f < faixa; f++) {
+                adicionarFaixaEncerrada(multiplicadorSemMovimento);
+            }
+            faixaAtual = faixa;
+            multiplicadorAtual = Math.max(multiplicadorSemMovimento, multiplicadorPara(ocupacao));
+        } else {
+            // Mesma faixa (ou relógio atrasado): vale o pico de ocupação
+            multiplicadorAtual = Math.max(multiplicadorAtual, multiplicadorPara(ocupacao));
+        }
+        ultimaOcupacao = ocupacao;
+    }
+
+    /**
+     * Retorna o multiplicador da faixa aberta (a do último registro de ocupação).
+     * Para o multiplicador em vigor em um momento posterior, use getMultiplicador().
+     * @return Multiplicador da faixa aberta
+     */
+    public double getMultiplicadorAtual() {
+        return multiplicadorAtual;
+    }
+
+    /**
+     * Retorna o multiplicador que estava em vigor em um momento.
+     * Antes do primeiro registro vale a tarifa normal; nas faixas sem movimento depois do último
+     * registro vale o multiplicador da ocupação que ficou.
+     * @param momento Data e hora consultada
+     * @return Multiplicador da faixa correspondente
+     */
+    public double getMultiplicador(LocalDateTime momento) {
+        long faixa = faixa(momento);
+        return somarMultiplicadores(faixa, faixa + 1);
+    }
+
+    /**
+     * Calcula o valor a pagar aplicando, a cada hora cobrada, o multiplicador
+     * da faixa em que essa hora começou.
+     * @param veiculo Veículo a ser cobrado
+     * @return Valor total a pagar
+     */
+    public double calcularValor(Veiculo veiculo) {
+        long horas = veiculo.calcularTempoPermanencia();
+        if (horas == 0) horas = 1; // Mínimo de 1 hora
+
+        // A hora k da permanência começa na faixa (faixa de entrada + k), pois as faixas têm 1 hora
+        long faixaEntrada = faixa(veiculo.getDataEntrada());
+        double valor = veiculo.getTarifaPrimeiraHora() * somarMultiplicadores(faixaEntrada, faixaEntrada + 1)
+                + veiculo.getTarifaHoraAdicional() * somarMultiplicadores(faixaEntrada + 1, faixaEntrada + horas);
+        return Math.round(valor * 100.0) / 100.0;
+    }
+
+    // ---- Exportação das faixas (usada pela ImagemEstado) ----
+
+    long getFaixaInicial() {
+        return faixaInicial;
+    }
+
+    long getFaixaAtual() {
+        return faixaAtual;
+    }
+
+    double getUltimaOcupacao() {
+        return ultimaOcupacao;
+    }
+
+    int getFaixasEncerradas() {
+        return faixasEncerradas;
+    }
+
+    // Soma acumulada das i primeiras faixas encerradas (0 <= i <= getFaixasEncerradas())
+    double getPrefixo(int i) {
+        return prefixos[i];
+    }
+
+    // Soma os multiplicadores das faixas no intervalo [inicio, fim)
+    private double somarMultiplicadores(long inicio, long fim) {
+        if (fim <= inicio) {
+            return 0.0;
+        }
+        if (faixaInicial < 0) {
+            return (fim - inicio) * MULTIPLICADOR_NORMAL;
+        }
+
+        double soma = 0.0;
+        long fimEncerradas = faixaInicial + faixasEncerradas;
+
+        // Antes do primeiro registro: tarifa normal
+        if (inicio < faixaInicial) {
+            long ate = Math.min(fim, faixaInicial);
+            soma += (ate - inicio) * MULTIPLICADOR_NORMAL;
+            inicio = ate;
+        }
+        // Faixas encerradas: diferença de prefixos
+        if (inicio < fim && inicio < fimEncerradas) {
+            long ate = Math.min(fim, fimEncerradas);
+            soma += prefixos[(int) (ate - faixaInicial)] - prefixos[(int) (inicio - faixaInicial)];
+            inicio = ate;
+        }
+        // Faixa aberta: pico de ocupação registrado nela
+        if (inicio < fim && inicio == faixaAtual) {
+            soma += multiplicadorAtual;
+            inicio++;
+        }
+        // Faixas seguintes, ainda sem movimento: ocupação que ficou após o último registro
+        if (inicio < fim) {
+            soma += (fim - inicio) * multiplicadorPara(ultimaOcupacao);
+        }
+        return soma;
+    }
+
+    private void adicionarFaixaEncerrada(double multiplicador) {
+        if (faixasEncerradas + 1 >= prefixos.length) {
+            prefixos = Arrays.copyOf(prefixos, prefixos.length * 2);
+        }
+        prefixos[faixasEncerradas + 1] = prefixos[faixasEncerradas] + multiplicador;
+        faixasEncerradas++;
+    }
+
+    private static double multiplicadorPara(double ocupacao) {
+        if (ocupacao >= LIMITE_LOTADO) {
+            return MULTIPLICADOR_LOTADO;
+        } else if (ocupacao >= LIMITE_ACRESCIMO) {
+            return MULTIPLICADOR_ACRESCIMO;
+        } else if (ocupacao < LIMITE_DESCONTO) {
+            return MULTIPLICADOR_DESCONTO;
+        }
+        return MULTIPLICADOR_NORMAL;
+    }
+
+    private static long faixa(LocalDateTime momento) {
+        return Math.floorDiv(momento.toEpochSecond(ZoneOffset.UTC), SEGUNDOS_POR_FAIXA);
+    }
+}
@@ -10,6 +10,7 @@ public class Veiculo {
     private String tipo; // Carro, Moto, etc.
     private LocalDateTime dataEntrada;
     private LocalDateTime dataSaida;
+    private double valorCobrado; // Valor efetivamente cobrado na saída (-1 se ainda não saiu)
     
     /**
      * Construtor que cria um veículo com hora de entrada atual.
@@ -21,6 +22,7 @@ public class Veiculo {
         this.tipo = tipo;
         this.dataEntrada = LocalDateTime.now();
         this.dataSaida = null;
+        this.valorCobrado = -1;
     }
     
     /**
@@ -34,6 +36,7 @@ public class Veiculo {
         this.tipo = tipo;
         this.dataEntrada = dataEntrada;
         this.dataSaida = null;
+        this.valorCobrado = -1;
     }
     
     // Getters e Setters
@@ -69,6 +72,37 @@ public class Veiculo {
         this.dataSaida = dataSaida;
     }
     
+    /**
+     * Retorna o valor cobrado na saída.
+     * Se o valor não foi registrado, calcula pela tarifa fixa.
+     * @return Valor cobrado
+     */
+    public double getValorCobrado() {
+        return (valorCobrado >= 0) ? valorCobrado : calcularValor();
+    }
+    
+    public void setValorCobrado(double valorCobrado) {
+        this.valorCobrado = valorCobrado;
+    }
+    
+    /**
+     * Retorna o valor da primeira hora conforme o tipo de veículo.
+     * Carro e outros: R$12,00 / Moto: R$8,00
+     * @return Valor da primeira hora
+     */
+    public double getTarifaPrimeiraHora() {
+        return tipo.equalsIgnoreCase("Moto") ? 8.0 : 12.0;
+    }
+    
+    /**
+     * Retorna o valor de cada hora adicional conforme o tipo de veículo.
+     * Carro e outros: R$8,00 / Moto: R$5,00
+     * @return Valor da hora adicional
+     */
+    public double getTarifaHoraAdicional() {
+        return tipo.equalsIgnoreCase("Moto") ? 5.0 : 8.0;
+    }
+    
     /**
      * Calcula o tempo real de permanência para exibição.
      * Retorna o tempo exato decorrido (horas e minutos).
@@ -121,18 +155,9 @@ public class Veiculo {
         long horas = calcularTempoPermanencia();
         if (horas == 0) horas = 1; // Mínimo de 1 hora
         
-        double primeiraHora;
-        double horaAdicional;
-        
         // Define valores conforme o tipo de veículo
-        if (tipo.equalsIgnoreCase("Moto")) {
-            primeiraHora = 8.0;
-            horaAdicional = 5.0;
-        } else {
-            // Carro ou outros tipos
-            primeiraHora = 12.0;
-            horaAdicional = 8.0;
-        }
+        double primeiraHora = getTarifaPrimeiraHora();
+        double horaAdicional = getTarifaHoraAdicional();
         
         // Calcula: primeira hora + horas adicionais
         if (horas == 1) {
@@ -152,7 +177,7 @@ public class Veiculo {
                     placa, tipo,
                     dataEntrada.format(java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")),
                     dataSaida.format(java.time.format.DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")),
-                    calcularValor());
+                    getValorCobrado());
         }
     }
 }